@@ -0,0 +1,28 @@
+import java.util.Arrays;
+
+/**
+ * Reusable list of cell indexes (row * cols + col) that flipped during one generation.
+ */
+final class CellChanges {
+    private int[] indexes = new int[1024];
+    private int size;
+
+    void add(int index) {
+        if (size == indexes.length) {
+            indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        indexes[size++] = index;
+    }
+
+    int get(int i) {
+        return indexes[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
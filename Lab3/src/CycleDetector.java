@@ -0,0 +1,43 @@
+/**
+ * Remembers the hashes of the last few generations and reports when the
+ * universe returns to one of them, i.e. when it settled into a still life
+ * (period 1) or an oscillator (period N).
+ */
+final class CycleDetector {
+    private final long[] hashes;
+    private final long[] generations;
+    private int next;
+    private int size;
+
+    /** @param maxPeriod longest period that can be detected */
+    CycleDetector(int maxPeriod) {
+        hashes = new long[maxPeriod];
+        generations = new long[maxPeriod];
+    }
+
+    void reset() {
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * Records the hash of a generation.
+     *
+     * @return the period if this generation repeats a recent one, otherwise 0
+     */
+    long record(long hash, long generation) {
+        long period = 0;
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash) {
+                long candidate = generation - generations[i];
+                if (period == 0 || candidate < period) period = candidate;
+            }
+        }
+
+        hashes[next] = hash;
+        generations[next] = generation;
+        next = (next + 1) % hashes.length;
+        if (size < hashes.length) size++;
+        return period;
+    }
+}
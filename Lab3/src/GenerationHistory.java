@@ -0,0 +1,337 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rewindable record of a run: a keyframe every {@code keyframeInterval}
+ * generations plus, for every other generation, the cells that flipped.
+ * <p>
+ * Flips arrive in ascending order, so a delta is stored as varint gaps
+ * between indexes, usually one byte per flipped cell. Keyframes use
+ * whichever is smaller: a bitmap or the gap-encoded list of live cells.
+ * A generation whose delta would outgrow the bitmap (a large soup flipping
+ * most of its cells) is stored as a keyframe instead, so no record is ever
+ * larger than a bitmap.
+ * When the in-memory payload exceeds the memory cap, the oldest records
+ * move to a memory-mapped temp file. Restoring a generation decodes one
+ * keyframe and replays fewer than {@code keyframeInterval} deltas.
+ */
+final class GenerationHistory implements Closeable {
+    private static final byte BITMAP_KEYFRAME = 0;
+    private static final byte LIST_KEYFRAME = 1;
+    private static final byte DELTA = 2;
+
+    private final int keyframeInterval;
+    private final long memoryCap;
+    private final ByteSink sink = new ByteSink();
+
+    private int rows;
+    private int cols;
+    private long firstGeneration;
+
+    // Record i holds generation firstGeneration + i; records [0, spilledCount) live in the spill file
+    private byte[][] payloads = new byte[256][];
+    private long[] spillOffsets = new long[256];
+    private int[] lengths = new int[256];
+    private int count;
+    private int spilledCount;
+    private long memoryBytes;
+    private SpillFile spillFile;
+
+    GenerationHistory(int keyframeInterval, long memoryCap) {
+        this.keyframeInterval = keyframeInterval;
+        this.memoryCap = memoryCap;
+    }
+
+    long firstGeneration() {
+        return firstGeneration;
+    }
+
+    long lastGeneration() {
+        return firstGeneration + count - 1;
+    }
+
+    /** Drops everything and starts a new history whose first keyframe is {@code grid}. */
+    void reset(boolean[][] grid, long generation) {
+        Arrays.fill(payloads, 0, count, null);
+        count = 0;
+        spilledCount = 0;
+        memoryBytes = 0;
+        if (spillFile != null) spillFile.truncate(0);
+
+        rows = grid.length;
+        cols = grid[0].length;
+        firstGeneration = generation;
+        append(encodeKeyframe(grid));
+    }
+
+    /**
+     * Records the next generation; {@code grid} is only read when a keyframe is due,
+     * the delta grows too large or there are no tracked {@code changes}.
+     */
+    void record(CellChanges changes, boolean[][] grid) {
+        byte[] delta = count % keyframeInterval == 0 || changes == null ? null : encodeDelta(changes);
+        append(delta != null ? delta : encodeKeyframe(grid));
+    }
+
+    /** Forgets every generation after {@code generation}, e.g. when the run continues from a rewound state. */
+    void truncateAfter(long generation) {
+        int keep = (int) (generation - firstGeneration + 1);
+        if (keep >= count) return;
+
+        for (int i = keep; i < count; i++) {
+            if (payloads[i] != null) memoryBytes -= lengths[i];
+            payloads[i] = null;
+        }
+        if (keep < spilledCount) {
+            spillFile.truncate(spillOffsets[keep]);
+            spilledCount = keep;
+        }
+        count = keep;
+    }
+
+    /** Writes the state of {@code generation} into {@code grid} (same size as the recorded universe). */
+    void restore(long generation, boolean[][] grid) {
+        if (generation < firstGeneration || generation > lastGeneration()) {
+            throw new IllegalArgumentException("Generation " + generation + " is not recorded");
+        }
+        int target = (int) (generation - firstGeneration);
+        int keyframe = target - target % keyframeInterval;
+
+        decodeKeyframe(payload(keyframe), grid);
+        for (int i = keyframe + 1; i <= target; i++) {
+            byte[] payload = payload(i);
+            if (payload[0] == DELTA) applyDelta(payload, grid);
+            else decodeKeyframe(payload, grid);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+
+    // ==========================================
+    // STORAGE
+    // ==========================================
+
+    private void append(byte[] payload) {
+        if (count == payloads.length) {
+            int capacity = count * 2;
+            payloads = Arrays.copyOf(payloads, capacity);
+            spillOffsets = Arrays.copyOf(spillOffsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        payloads[count] = payload;
+        lengths[count] = payload.length;
+        count++;
+        memoryBytes += payload.length;
+
+        // Spill the oldest records, but always keep the newest one in memory
+        while (memoryBytes > memoryCap && spilledCount < count - 1) {
+            spill(spilledCount++);
+        }
+    }
+
+    private void spill(int record) {
+        try {
+            if (spillFile == null) spillFile = new SpillFile();
+            spillOffsets[record] = spillFile.write(payloads[record]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill generation history", e);
+        }
+        memoryBytes -= lengths[record];
+        payloads[record] = null;
+    }
+
+    private byte[] payload(int record) {
+        byte[] payload = payloads[record];
+        return payload != null ? payload : spillFile.read(spillOffsets[record], lengths[record]);
+    }
+
+    // ==========================================
+    // ENCODING
+    // ==========================================
+
+    /** Gap-encoded flips, or null once they take more room than a bitmap keyframe. */
+    private byte[] encodeDelta(CellChanges changes) {
+        int bitmapBytes = (int) (((long) rows * cols + 7) >>> 3);
+        sink.reset();
+        sink.put(DELTA);
+        int previous = -1;
+        for (int i = 0, n = changes.size(); i < n; i++) {
+            int index = changes.get(i);
+            sink.putVarint(index - previous);
+            previous = index;
+            if (sink.size() > bitmapBytes) return null;
+        }
+        return sink.toArray();
+    }
+
+    private byte[] encodeKeyframe(boolean[][] grid) {
+        int bitmapBytes = (int) (((long) rows * cols + 7) >>> 3);
+
+        // Try the live-cell list first and fall back to a bitmap once it grows larger
+        sink.reset();
+        sink.put(LIST_KEYFRAME);
+        int index = 0;
+        int previous = -1;
+        for (boolean[] row : grid) {
+            for (boolean alive : row) {
+                if (alive) {
+                    sink.putVarint(index - previous);
+                    previous = index;
+                    if (sink.size() > bitmapBytes) return encodeBitmap(grid, bitmapBytes);
+                }
+                index++;
+            }
+        }
+        return sink.toArray();
+    }
+
+    private static byte[] encodeBitmap(boolean[][] grid, int bitmapBytes) {
+        byte[] payload = new byte[1 + bitmapBytes];
+        payload[0] = BITMAP_KEYFRAME;
+        int bit = 0;
+        for (boolean[] row : grid) {
+            for (boolean alive : row) {
+                if (alive) payload[1 + (bit >>> 3)] |= (byte) (1 << (bit & 7));
+                bit++;
+            }
+        }
+        return payload;
+    }
+
+    private void decodeKeyframe(byte[] payload, boolean[][] grid) {
+        if (payload[0] == BITMAP_KEYFRAME) {
+            int bit = 0;
+            for (boolean[] row : grid) {
+                for (int c = 0; c < cols; c++, bit++) {
+                    row[c] = (payload[1 + (bit >>> 3)] & (1 << (bit & 7))) != 0;
+                }
+            }
+            return;
+        }
+        for (boolean[] row : grid) Arrays.fill(row, false);
+        applyDelta(payload, grid); // A live-cell list is a delta from the empty universe
+    }
+
+    private void applyDelta(byte[] payload, boolean[][] grid) {
+        int index = -1;
+        int pos = 1;
+        while (pos < payload.length) {
+            // Inline varint decoding: 7 bits per byte, high bit set on all but the last byte
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = payload[pos++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            index += gap;
+            boolean[] row = grid[index / cols];
+            row[index % cols] = !row[index % cols];
+        }
+    }
+
+    /** Growable byte buffer reused for encoding. */
+    private static final class ByteSink {
+        private byte[] buffer = new byte[4096];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void put(byte b) {
+            if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+            buffer[size++] = b;
+        }
+
+        void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * Append-only temp file mapped in fixed-size chunks.
+     * A record never straddles two chunks: no record is larger than a bitmap
+     * keyframe, which is at most 32 MB.
+     */
+    private static final class SpillFile implements Closeable {
+        private static final int CHUNK_SIZE = 64 << 20;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+        private long position;
+
+        SpillFile() throws IOException {
+            path = Files.createTempFile("life-history", ".bin");
+            path.toFile().deleteOnExit();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        long write(byte[] payload) throws IOException {
+            if (payload.length > CHUNK_SIZE) {
+                throw new IOException("History record of " + payload.length + " bytes does not fit a spill chunk");
+            }
+            int chunk = (int) (position / CHUNK_SIZE);
+            int offset = (int) (position % CHUNK_SIZE);
+            if (offset + payload.length > CHUNK_SIZE) {
+                chunk++;
+                offset = 0;
+            }
+            while (chunks.size() <= chunk) {
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * CHUNK_SIZE, CHUNK_SIZE));
+            }
+            chunks.get(chunk).put(offset, payload);
+
+            long start = (long) chunk * CHUNK_SIZE + offset;
+            position = start + payload.length;
+            return start;
+        }
+
+        byte[] read(long start, int length) {
+            byte[] payload = new byte[length];
+            chunks.get((int) (start / CHUNK_SIZE)).get((int) (start % CHUNK_SIZE), payload);
+            return payload;
+        }
+
+        void truncate(long newPosition) {
+            position = newPosition;
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunks.clear();
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
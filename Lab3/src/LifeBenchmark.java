@@ -0,0 +1,253 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Headless benchmark of the generation engines, no Swing involved.
+ * <p>
+ * Every case steps a universe through a warmup phase and a measured phase,
+ * in the style of JMH (the lab has no build tool to pull JMH in). Each
+ * universe is either seeded random soup at a given density or a well-known
+ * pattern. Reported per case: generations/s, cell updates/s and bytes
+ * allocated per generation, measured with the thread allocation counter.
+ * <p>
+ * Usage (large grids need a big heap, e.g. {@code -Xmx3g} for 16384x16384):
+ * <pre>
+ * java LifeBenchmark [--sizes 50x70,512x512,2048x2048,16384x16384]
+ *                    [--densities 0.05,0.2,0.5] [--patterns gun,rpentomino,acorn]
+ *                    [--engines baseline,table,tracked,counting]
+ *                    [--warmup-ms 500] [--measure-ms 2000] [--seed 42]
+ * </pre>
+ */
+public class LifeBenchmark {
+
+    private static final int MIN_GENERATIONS = 3;
+
+    // --- Well-known patterns (RLE) ---
+    private static final String[][] PATTERNS = {
+            {"gun", "x = 36, y = 9\n24bo$22bobo$12b2o6b2o12b2o$11bo3bo4b2o12b2o$2o8bo5bo3b2o$"
+                    + "2o8bo3bob2o4bobo$10bo5bo7bo$11bo3bo$12b2o!"},
+            {"rpentomino", "x = 3, y = 3\nb2o$2o$bo!"},
+            {"acorn", "x = 7, y = 3\nbo$3bo$2o2b3o!"}
+    };
+
+    private static final String[] ALL_ENGINES = {"baseline", "table", "tracked", "counting"};
+
+    private static volatile long blackhole;
+
+    public static void main(String[] args) throws IOException {
+        List<int[]> sizes = parseSizes("50x70,512x512,2048x2048,16384x16384");
+        double[] densities = {0.05, 0.2, 0.5};
+        String[] patterns = {"gun", "rpentomino", "acorn"};
+        String[] engines = ALL_ENGINES;
+        long warmupMs = 500;
+        long measureMs = 2000;
+        long seed = 42;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes" -> sizes = parseSizes(value);
+                case "--densities" -> densities = value.isEmpty() ? new double[0]
+                        : Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+                case "--patterns" -> patterns = value.isEmpty() ? new String[0] : value.split(",");
+                case "--engines" -> engines = value.split(",");
+                case "--warmup-ms" -> warmupMs = Long.parseLong(value);
+                case "--measure-ms" -> measureMs = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.printf("%-10s %-13s %-16s %12s %16s %14s%n",
+                "engine", "grid", "universe", "gens/s", "cell-updates/s", "bytes/gen");
+
+        for (int[] size : sizes) {
+            for (double density : densities) {
+                String name = String.format(Locale.ROOT, "random %.2f", density);
+                for (String engine : engines) {
+                    runCase(engine, size[0], size[1], name, randomUniverse(size[0], size[1], density, seed), warmupMs, measureMs);
+                }
+            }
+            for (String pattern : patterns) {
+                for (String engine : engines) {
+                    runCase(engine, size[0], size[1], pattern, patternUniverse(size[0], size[1], pattern), warmupMs, measureMs);
+                }
+            }
+        }
+        System.out.println("(checksum " + blackhole + ")");
+    }
+
+    private static void runCase(String engineName, int rows, int cols, String universe, boolean[][] initial,
+                                long warmupMs, long measureMs) {
+        Stepper stepper = createStepper(engineName, rows, cols);
+        boolean[][] grid = copy(initial);
+
+        // --- Warmup ---
+        long deadline = System.nanoTime() + warmupMs * 1_000_000;
+        int warmed = 0;
+        while (warmed < 1 || System.nanoTime() < deadline) {
+            grid = stepper.step(grid);
+            warmed++;
+        }
+
+        // --- Measurement ---
+        grid = copy(initial);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        deadline = start + measureMs * 1_000_000;
+        long generations = 0;
+        while (generations < MIN_GENERATIONS || System.nanoTime() < deadline) {
+            grid = stepper.step(grid);
+            generations++;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        blackhole += checksum(grid);
+
+        double seconds = elapsed / 1e9;
+        System.out.printf(Locale.ROOT, "%-10s %-13s %-16s %12.1f %16.3e %14d%n",
+                engineName, rows + "x" + cols, universe,
+                generations / seconds, (double) rows * cols * generations / seconds, allocated / generations);
+    }
+
+    // ==========================================
+    // ENGINES UNDER TEST
+    // ==========================================
+
+    private interface Stepper {
+        /** Advances one generation and returns the new current grid. */
+        boolean[][] step(boolean[][] grid);
+    }
+
+    private static Stepper createStepper(String name, int rows, int cols) {
+        return switch (name) {
+            case "baseline" -> LifeBenchmark::baselineStep;
+            case "table" -> new EngineStepper(LifeRule.CONWAY, rows, cols, false, false);
+            case "tracked" -> new EngineStepper(LifeRule.CONWAY, rows, cols, true, false);
+            // Same rule as "table", forced through the column sums that radius >= 2 rules use
+            case "counting" -> new EngineStepper(LifeRule.CONWAY, rows, cols, false, true);
+            default -> throw new IllegalArgumentException("Unknown engine " + name);
+        };
+    }
+
+    /** LifeEngine with swapped buffers; "tracked" also feeds the hash and cycle detector like the UI does. */
+    private static final class EngineStepper implements Stepper {
+        private final LifeEngine engine;
+        private final UniverseHash hash;
+        private final CycleDetector detector;
+        private boolean[][] spare;
+        private long generation;
+
+        EngineStepper(LifeRule rule, int rows, int cols, boolean tracked, boolean countingOnly) {
+            engine = new LifeEngine(rule);
+            engine.setTrackChanges(tracked);
+            engine.setCountingOnly(countingOnly);
+            hash = tracked ? new UniverseHash() : null;
+            detector = tracked ? new CycleDetector(128) : null;
+            spare = new boolean[rows][cols];
+        }
+
+        @Override
+        public boolean[][] step(boolean[][] grid) {
+            engine.step(grid, spare);
+            boolean[][] next = spare;
+            spare = grid;
+            if (hash != null) {
+                hash.apply(engine.changes(), next);
+                detector.record(hash.value(), ++generation);
+            }
+            return next;
+        }
+    }
+
+    /** The original nextGeneration/countNeighbors pair: branchy B3/S23 and a fresh grid per generation. */
+    private static boolean[][] baselineStep(boolean[][] grid) {
+        int rows = grid.length;
+        int cols = grid[0].length;
+        boolean[][] nextGrid = new boolean[rows][cols];
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int aliveNeighbors = 0;
+                for (int r = row - 1; r <= row + 1; r++) {
+                    for (int c = col - 1; c <= col + 1; c++) {
+                        if (r == row && c == col) continue;
+                        if (r >= 0 && r < rows && c >= 0 && c < cols) {
+                            if (grid[r][c]) aliveNeighbors++;
+                        }
+                    }
+                }
+
+                if (grid[row][col]) {
+                    nextGrid[row][col] = (aliveNeighbors == 2 || aliveNeighbors == 3);
+                } else {
+                    nextGrid[row][col] = (aliveNeighbors == 3);
+                }
+            }
+        }
+        return nextGrid;
+    }
+
+    // ==========================================
+    // UNIVERSES
+    // ==========================================
+
+    private static boolean[][] randomUniverse(int rows, int cols, double density, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        boolean[][] grid = new boolean[rows][cols];
+        for (boolean[] row : grid) {
+            for (int c = 0; c < cols; c++) {
+                row[c] = random.nextDouble() < density;
+            }
+        }
+        return grid;
+    }
+
+    private static boolean[][] patternUniverse(int rows, int cols, String name) throws IOException {
+        for (String[] pattern : PATTERNS) {
+            if (pattern[0].equals(name)) {
+                Pattern parsed = PatternIO.read(new ByteArrayInputStream(pattern[1].getBytes(StandardCharsets.US_ASCII)));
+                boolean[][] grid = new boolean[rows][cols];
+                parsed.stamp(grid, (rows - parsed.height()) / 2, (cols - parsed.width()) / 2);
+                return grid;
+            }
+        }
+        throw new IllegalArgumentException("Unknown pattern " + name);
+    }
+
+    private static boolean[][] copy(boolean[][] grid) {
+        boolean[][] result = new boolean[grid.length][];
+        for (int r = 0; r < grid.length; r++) {
+            result[r] = grid[r].clone();
+        }
+        return result;
+    }
+
+    private static long checksum(boolean[][] grid) {
+        long sum = 0;
+        for (boolean[] row : grid) {
+            for (boolean alive : row) {
+                if (alive) sum++;
+            }
+        }
+        return sum;
+    }
+
+    private static List<int[]> parseSizes(String value) {
+        List<int[]> sizes = new ArrayList<>();
+        for (String size : value.split(",")) {
+            String[] parts = size.toLowerCase(Locale.ROOT).split("x");
+            sizes.add(new int[]{Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())});
+        }
+        return sizes;
+    }
+}
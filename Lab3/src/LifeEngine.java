@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * Computes generations of a bounded universe (cells beyond the edges are dead)
+ * using the lookup tables of a {@link LifeRule}.
+ * <p>
+ * Radius-1 rules slide a packed 3x3 block along each row: every column
+ * contributes 3 bits, so the next state is a single table load with no
+ * branches. Larger radii keep running column sums and a sliding window.
+ * <p>
+ * Cells that flip are recorded in {@link #changes()}, so hashing and history
+ * only have to look at what actually changed.
+ */
+final class LifeEngine {
+    // Bit of the middle cell in a packed 3x3 block (left column << 6 | middle << 3 | right)
+    static final int CENTER_BIT = 1 << 4;
+
+    private LifeRule rule;
+    private boolean[] deadRow = new boolean[0];
+    private int[] columnSums = new int[0];
+    private CellChanges changes = new CellChanges();
+    private boolean countingOnly;
+
+    LifeEngine(LifeRule rule) {
+        this.rule = rule;
+    }
+
+    LifeRule rule() {
+        return rule;
+    }
+
+    void setRule(LifeRule rule) {
+        this.rule = rule;
+    }
+
+    /** Cells flipped by the last {@link #step}, or null if tracking is disabled. */
+    CellChanges changes() {
+        return changes;
+    }
+
+    /** Tracking can be turned off for huge universes where nothing consumes the changes. */
+    void setTrackChanges(boolean track) {
+        changes = track ? new CellChanges() : null;
+    }
+
+    /** Runs radius-1 rules through the counting path too, so benchmarks can compare both paths on one rule. */
+    void setCountingOnly(boolean countingOnly) {
+        this.countingOnly = countingOnly;
+    }
+
+    /** Writes the generation after {@code src} into {@code dst}; both must have the same size. */
+    void step(boolean[][] src, boolean[][] dst) {
+        int cols = src.length == 0 ? 0 : src[0].length;
+        if (deadRow.length != cols) {
+            deadRow = new boolean[cols];
+            columnSums = new int[cols];
+        }
+        if (changes != null) changes.clear();
+
+        if (rule.radius() == 1 && !countingOnly) {
+            stepPacked(src, dst, cols);
+        } else {
+            stepCounting(src, dst, cols);
+        }
+    }
+
+    private void stepPacked(boolean[][] src, boolean[][] dst, int cols) {
+        boolean[] table = rule.neighborhoodTable();
+        CellChanges flips = changes;
+        int rows = src.length;
+
+        for (int r = 0; r < rows; r++) {
+            boolean[] up = r > 0 ? src[r - 1] : deadRow;
+            boolean[] mid = src[r];
+            boolean[] down = r + 1 < rows ? src[r + 1] : deadRow;
+            boolean[] out = dst[r];
+
+            // Left column starts dead; the block holds (left, middle, right) columns of 3 bits each
+            int block = column(up, mid, down, 0);
+            int last = cols - 1;
+            for (int c = 0; c < last; c++) {
+                block = ((block << 3) | column(up, mid, down, c + 1)) & 0x1FF;
+                out[c] = table[block];
+            }
+            if (cols > 0) {
+                out[last] = table[(block << 3) & 0x1FF];
+            }
+            if (flips != null) recordFlips(flips, mid, out, r * cols);
+        }
+    }
+
+    private static int column(boolean[] up, boolean[] mid, boolean[] down, int c) {
+        return (up[c] ? 4 : 0) | (mid[c] ? 2 : 0) | (down[c] ? 1 : 0);
+    }
+
+    private void stepCounting(boolean[][] src, boolean[][] dst, int cols) {
+        boolean[] table = rule.table();
+        int radius = rule.radius();
+        int aliveOffset = rule.maxNeighbors() + 1;
+        int rows = src.length;
+        int[] sums = columnSums;
+        CellChanges flips = changes;
+
+        // Vertical sums for row 0 cover rows 0..radius
+        Arrays.fill(sums, 0);
+        for (int r = 0; r <= radius && r < rows; r++) {
+            addRow(sums, src[r], 1);
+        }
+
+        for (int r = 0; r < rows; r++) {
+            boolean[] mid = src[r];
+            boolean[] out = dst[r];
+
+            // Horizontal window over the column sums, starting with columns 0..radius
+            int window = 0;
+            for (int c = 0; c <= radius && c < cols; c++) window += sums[c];
+
+            for (int c = 0; c < cols; c++) {
+                int alive = mid[c] ? 1 : 0;
+                out[c] = table[alive * aliveOffset + window - alive];
+
+                int enter = c + radius + 1;
+                int leave = c - radius;
+                if (enter < cols) window += sums[enter];
+                if (leave >= 0) window -= sums[leave];
+            }
+
+            if (flips != null) recordFlips(flips, mid, out, r * cols);
+
+            // Slide the vertical sums one row down
+            if (r + radius + 1 < rows) addRow(sums, src[r + radius + 1], 1);
+            if (r - radius >= 0) addRow(sums, src[r - radius], -1);
+        }
+    }
+
+    /**
+     * Appends the indexes of cells that differ between two rows.
+     * {@link Arrays#mismatch} is a vectorized intrinsic, so unchanged stretches
+     * (most of a settled universe) are skipped many cells at a time.
+     */
+    private static void recordFlips(CellChanges flips, boolean[] before, boolean[] after, int rowBase) {
+        int length = before.length;
+        int c = 0;
+        while (c < length) {
+            int offset = Arrays.mismatch(before, c, length, after, c, length);
+            if (offset < 0) break;
+            c += offset;
+            flips.add(rowBase + c);
+            c++;
+        }
+    }
+
+    private static void addRow(int[] sums, boolean[] row, int sign) {
+        for (int c = 0; c < sums.length; c++) {
+            sums[c] += row[c] ? sign : 0;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.Locale;
+
+/**
+ * A Life-like rule compiled into lookup tables.
+ * <p>
+ * Supported notations:
+ * <ul>
+ *     <li>B/S: {@code B3/S23}, {@code B36/S23}, {@code B2/S} (also the legacy S/B form {@code 23/3})</li>
+ *     <li>Larger-than-Life (HROT): {@code R5,C0,M1,S34..58,B34..45,NM}</li>
+ * </ul>
+ * Every rule, including Conway's, is just a different table, so custom rules
+ * run exactly as fast as the built-in one.
+ */
+final class LifeRule {
+    static final LifeRule CONWAY = parse("B3/S23");
+    static final int MAX_RADIUS = 10;
+
+    private final String notation;
+    private final int radius;
+    private final int maxNeighbors;
+    // Next state indexed by (alive ? maxNeighbors + 1 : 0) + neighbors
+    private final boolean[] table;
+    // Next state indexed by a packed 3x3 block (radius 1 only), see LifeEngine
+    private final boolean[] neighborhoodTable;
+
+    private LifeRule(String notation, int radius, boolean[] birth, boolean[] survival) {
+        this.notation = notation;
+        this.radius = radius;
+        this.maxNeighbors = (2 * radius + 1) * (2 * radius + 1) - 1;
+
+        table = new boolean[2 * (maxNeighbors + 1)];
+        for (int n = 0; n <= maxNeighbors; n++) {
+            table[n] = birth[n];
+            table[maxNeighbors + 1 + n] = survival[n];
+        }
+
+        if (radius == 1) {
+            neighborhoodTable = new boolean[512];
+            for (int block = 0; block < 512; block++) {
+                boolean alive = (block & LifeEngine.CENTER_BIT) != 0;
+                int neighbors = Integer.bitCount(block) - (alive ? 1 : 0);
+                neighborhoodTable[block] = alive ? survival[neighbors] : birth[neighbors];
+            }
+        } else {
+            neighborhoodTable = null;
+        }
+    }
+
+    static LifeRule parse(String text) {
+        String rule = text.trim().toUpperCase(Locale.ROOT);
+        if (rule.startsWith("R")) {
+            return parseLargerThanLife(rule);
+        }
+
+        String[] parts = rule.split("/", -1);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected B/S notation, e.g. B3/S23: " + text);
+        }
+        String birthPart;
+        String survivalPart;
+        if (parts[0].startsWith("B") || parts[1].startsWith("S")) {
+            birthPart = parts[0];
+            survivalPart = parts[1];
+        } else if (parts[0].startsWith("S") || parts[1].startsWith("B")) {
+            birthPart = parts[1];
+            survivalPart = parts[0];
+        } else {
+            // Legacy "survival/birth" form, e.g. 23/3
+            birthPart = parts[1];
+            survivalPart = parts[0];
+        }
+
+        boolean[] birth = parseDigits(birthPart, 'B', text);
+        boolean[] survival = parseDigits(survivalPart, 'S', text);
+        return new LifeRule("B" + digits(birth) + "/S" + digits(survival), 1, birth, survival);
+    }
+
+    private static boolean[] parseDigits(String part, char prefix, String text) {
+        boolean[] counts = new boolean[9];
+        int start = !part.isEmpty() && part.charAt(0) == prefix ? 1 : 0;
+        for (int i = start; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c < '0' || c > '8') {
+                throw new IllegalArgumentException("Invalid neighbor count '" + c + "' in rule " + text);
+            }
+            counts[c - '0'] = true;
+        }
+        return counts;
+    }
+
+    private static String digits(boolean[] counts) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < counts.length; n++) {
+            if (counts[n]) sb.append(n);
+        }
+        return sb.toString();
+    }
+
+    /** Parses the HROT form used by Golly: R(adius), C(states), M(iddle), S(urvival), B(irth), N(eighborhood). */
+    private static LifeRule parseLargerThanLife(String rule) {
+        int radius = -1;
+        boolean includeMiddle = false;
+        String survival = null;
+        String birth = null;
+        char listKey = 0;
+        StringBuilder list = new StringBuilder();
+
+        for (String token : rule.split(",")) {
+            token = token.trim();
+            if (token.isEmpty()) continue;
+            char key = token.charAt(0);
+            if (Character.isDigit(key) || key == '.') {
+                // Continuation of an S or B list, e.g. "S2..3,5"
+                if (listKey == 0) throw new IllegalArgumentException("Unexpected value in rule: " + rule);
+                list.append(',').append(token);
+                continue;
+            }
+            if (listKey == 'S') survival = list.toString();
+            if (listKey == 'B') birth = list.toString();
+            listKey = 0;
+
+            String value = token.substring(1);
+            switch (key) {
+                case 'R' -> radius = parseInt(value, rule);
+                case 'C' -> {
+                    int states = parseInt(value, rule);
+                    if (states > 2) throw new IllegalArgumentException("Only two-state rules are supported: " + rule);
+                }
+                case 'M' -> includeMiddle = parseInt(value, rule) == 1;
+                case 'S', 'B' -> {
+                    listKey = key;
+                    list.setLength(0);
+                    list.append(value);
+                }
+                case 'N' -> {
+                    if (!value.equals("M")) throw new IllegalArgumentException("Only the Moore neighborhood (NM) is supported: " + rule);
+                }
+                default -> throw new IllegalArgumentException("Unknown key '" + key + "' in rule " + rule);
+            }
+        }
+        if (listKey == 'S') survival = list.toString();
+        if (listKey == 'B') birth = list.toString();
+
+        if (radius < 1 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Radius must be between 1 and " + MAX_RADIUS + ": " + rule);
+        }
+        int maxNeighbors = (2 * radius + 1) * (2 * radius + 1) - 1;
+        // With M1 the middle cell is part of its own neighborhood, so a live cell sees one extra neighbor
+        boolean[] survivalCounts = parseRanges(survival, maxNeighbors, includeMiddle ? 1 : 0, rule);
+        boolean[] birthCounts = parseRanges(birth, maxNeighbors, 0, rule);
+        return new LifeRule(rule, radius, birthCounts, survivalCounts);
+    }
+
+    private static boolean[] parseRanges(String list, int maxNeighbors, int shift, String rule) {
+        boolean[] counts = new boolean[maxNeighbors + 1];
+        if (list == null || list.isEmpty()) return counts;
+
+        for (String range : list.split(",")) {
+            if (range.isEmpty()) continue;
+            int dots = range.indexOf("..");
+            int from = parseInt(dots < 0 ? range : range.substring(0, dots), rule);
+            int to = dots < 0 ? from : parseInt(range.substring(dots + 2), rule);
+            for (int n = from; n <= to; n++) {
+                int neighbors = n - shift;
+                if (neighbors >= 0 && neighbors <= maxNeighbors) counts[neighbors] = true;
+            }
+        }
+        return counts;
+    }
+
+    private static int parseInt(String value, String rule) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number '" + value + "' in rule " + rule);
+        }
+    }
+
+    String notation() { return notation; }
+
+    int radius() { return radius; }
+
+    int maxNeighbors() { return maxNeighbors; }
+
+    boolean[] table() { return table; }
+
+    boolean[] neighborhoodTable() { return neighborhoodTable; }
+
+    @Override
+    public String toString() {
+        return notation;
+    }
+}
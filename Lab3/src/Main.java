@@ -1,16 +1,49 @@
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class Main extends JFrame {
 
     // --- Game Configuration ---
-    private static final int ROWS = 50;
-    private static final int COLS = 70;
+    private static final int DEFAULT_ROWS = 50;
+    private static final int DEFAULT_COLS = 70;
     private static final int CELL_SIZE = 12;
+    private static final int IMPORT_MARGIN = 10;   // Empty cells kept around an imported pattern
+    private static final long MAX_CELLS = 1L << 28; // 16k x 16k
+    private static final int MAX_DETECTED_PERIOD = 128;
+    private static final int KEYFRAME_INTERVAL = 64;
+    // In-memory budget for the rewind history; older generations spill to a mapped temp file
+    private static final long HISTORY_MEMORY_CAP = Long.getLong("life.history.memoryMB", 64) << 20;
+
+    // --- Rule Presets (notation, name) ---
+    private static final String[][] RULE_PRESETS = {
+            {"B3/S23", "Conway's Life"},
+            {"B36/S23", "HighLife"},
+            {"B3678/S34678", "Day & Night"},
+            {"B2/S", "Seeds"},
+            {"B1357/S1357", "Replicator"},
+            {"B368/S245", "Morley"},
+            {"R5,C0,M1,S34..58,B34..45,NM", "Bosco's Rule"}
+    };
 
     // --- Game State ---
-    private boolean[][] grid = new boolean[ROWS][COLS];
+    private int rows = DEFAULT_ROWS;
+    private int cols = DEFAULT_COLS;
+    private boolean[][] grid = new boolean[rows][cols];
+    private boolean[][] nextGrid = new boolean[rows][cols]; // Back buffer, swapped with grid every generation
+    private final LifeEngine engine = new LifeEngine(LifeRule.CONWAY);
+    private final UniverseHash universeHash = new UniverseHash();
+    private final CycleDetector cycleDetector = new CycleDetector(MAX_DETECTED_PERIOD);
+    private long generation = 0;
+    private final GenerationHistory history = new GenerationHistory(KEYFRAME_INTERVAL, HISTORY_MEMORY_CAP);
+    private boolean updatingTimeline = false;
+    private boolean historyStale = false; // Hand-drawn cells not yet in the history
     private boolean isRunning = false;
     private Timer timer;
 
@@ -19,6 +52,9 @@ public class Main extends JFrame {
     private final JButton startStopButton;
     private final JSlider speedSlider;
     private final JSpinner speedSpinner;
+    private final JLabel statusLabel;
+    private final JCheckBox stopWhenStableBox;
+    private final JSlider timelineSlider;
 
     // --- Colors (Темніші для кращого контрасту з білим текстом) ---
     private final Color colorBtnNormal = new Color(25, 110, 45);
@@ -26,14 +62,23 @@ public class Main extends JFrame {
 
     public Main() {
         // --- Window Setup ---
-        setTitle("Conway's Game of Life");
+        updateTitle();
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setResizable(false);
         setLayout(new BorderLayout());
 
         // --- Grid Panel (The Universe) ---
+        // Imported patterns can be larger than the window, so the grid scrolls
         gridPanel = new GridPanel();
-        add(gridPanel, BorderLayout.CENTER);
+        JScrollPane scrollPane = new JScrollPane(gridPanel);
+        scrollPane.setBorder(null);
+        scrollPane.getViewport().setPreferredSize(new Dimension(DEFAULT_COLS * CELL_SIZE, DEFAULT_ROWS * CELL_SIZE));
+        scrollPane.getVerticalScrollBar().setUnitIncrement(CELL_SIZE);
+        scrollPane.getHorizontalScrollBar().setUnitIncrement(CELL_SIZE);
+        add(scrollPane, BorderLayout.CENTER);
+
+        // --- Menu (Patterns & Snapshots) ---
+        setJMenuBar(createMenuBar());
 
         // --- Control Panel (Bottom) ---
         JPanel controlPanel = new JPanel();
@@ -87,7 +132,31 @@ public class Main extends JFrame {
         controlPanel.add(speedSlider);
         controlPanel.add(speedSpinner);
 
-        add(controlPanel, BorderLayout.SOUTH);
+        // --- Status Bar (Generation & Cycle Detection) ---
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.setBorder(BorderFactory.createEmptyBorder(0, 15, 8, 15));
+        statusPanel.setBackground(controlPanel.getBackground());
+        statusLabel = new JLabel();
+        statusLabel.setPreferredSize(new Dimension(380, statusLabel.getPreferredSize().height));
+        statusPanel.add(statusLabel, BorderLayout.WEST);
+
+        // Timeline: drag to jump to any recorded generation
+        timelineSlider = new JSlider(0, 0, 0);
+        timelineSlider.setOpaque(false);
+        timelineSlider.setToolTipText("Rewind to any recorded generation");
+        timelineSlider.addChangeListener(_ -> {
+            if (!updatingTimeline) rewindTo(timelineSlider.getValue());
+        });
+        statusPanel.add(timelineSlider, BorderLayout.CENTER);
+        stopWhenStableBox = new JCheckBox("Stop when stable", true);
+        stopWhenStableBox.setOpaque(false);
+        statusPanel.add(stopWhenStableBox, BorderLayout.EAST);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(controlPanel, BorderLayout.CENTER);
+        southPanel.add(statusPanel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
+        resetTracking();
 
         // --- Timer Setup (Game Loop) ---
         timer = new Timer(speedSlider.getValue(), _ -> nextGeneration());
@@ -96,6 +165,72 @@ public class Main extends JFrame {
         setLocationRelativeTo(null);
     }
 
+    private JMenuBar createMenuBar() {
+        JMenu fileMenu = new JMenu("File");
+
+        JMenuItem importItem = new JMenuItem("Import pattern (RLE / plaintext)...");
+        importItem.addActionListener(_ -> importPattern());
+        fileMenu.add(importItem);
+
+        JMenuItem exportRleItem = new JMenuItem("Export as RLE...");
+        exportRleItem.addActionListener(_ -> exportPattern(true));
+        fileMenu.add(exportRleItem);
+
+        JMenuItem exportCellsItem = new JMenuItem("Export as plaintext...");
+        exportCellsItem.addActionListener(_ -> exportPattern(false));
+        fileMenu.add(exportCellsItem);
+
+        fileMenu.addSeparator();
+
+        JMenuItem saveSnapshotItem = new JMenuItem("Save snapshot...");
+        saveSnapshotItem.addActionListener(_ -> saveSnapshot());
+        fileMenu.add(saveSnapshotItem);
+
+        JMenuItem loadSnapshotItem = new JMenuItem("Load snapshot...");
+        loadSnapshotItem.addActionListener(_ -> loadSnapshot());
+        fileMenu.add(loadSnapshotItem);
+
+        JMenu ruleMenu = new JMenu("Rule");
+        ButtonGroup ruleGroup = new ButtonGroup();
+        for (String[] preset : RULE_PRESETS) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(preset[0] + "  (" + preset[1] + ")");
+            item.setSelected(preset[0].equals(engine.rule().notation()));
+            item.addActionListener(_ -> applyRule(preset[0]));
+            ruleGroup.add(item);
+            ruleMenu.add(item);
+        }
+        ruleMenu.addSeparator();
+        JMenuItem customRuleItem = new JMenuItem("Custom rule...");
+        customRuleItem.addActionListener(_ -> {
+            String rule = JOptionPane.showInputDialog(this,
+                    "Rule in B/S notation (e.g. B36/S23) or R2,C0,M0,S..,B..,NM:", engine.rule().notation());
+            if (rule != null) {
+                ruleGroup.clearSelection();
+                applyRule(rule);
+            }
+        });
+        ruleMenu.add(customRuleItem);
+
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(fileMenu);
+        menuBar.add(ruleMenu);
+        return menuBar;
+    }
+
+    private void applyRule(String notation) {
+        try {
+            engine.setRule(LifeRule.parse(notation));
+            cycleDetector.reset(); // Past generations were computed with another rule
+            updateTitle();
+        } catch (IllegalArgumentException ex) {
+            showError(ex.getMessage());
+        }
+    }
+
+    private void updateTitle() {
+        setTitle("Conway's Game of Life [" + engine.rule() + "]");
+    }
+
     // --- Game Logic Methods ---
 
     private void toggleGame() {
@@ -113,49 +248,227 @@ public class Main extends JFrame {
 
     private void clearGrid() {
         if (isRunning) toggleGame();
-        grid = new boolean[ROWS][COLS];
+        grid = new boolean[rows][cols];
+        nextGrid = new boolean[rows][cols];
+        resetTracking();
         gridPanel.repaint();
     }
 
     private void randomizeGrid() {
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLS; j++) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
                 grid[i][j] = Math.random() < 0.2;
             }
         }
+        resetTracking();
         gridPanel.repaint();
     }
 
     private void nextGeneration() {
-        boolean[][] nextGrid = new boolean[ROWS][COLS];
+        commitEdits();
+        // Continuing from a rewound generation starts a new branch of the timeline
+        if (generation < history.lastGeneration()) history.truncateAfter(generation);
 
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
-                int aliveNeighbors = countNeighbors(row, col);
+        engine.step(grid, nextGrid);
 
-                if (grid[row][col]) {
-                    nextGrid[row][col] = (aliveNeighbors == 2 || aliveNeighbors == 3);
-                } else {
-                    nextGrid[row][col] = (aliveNeighbors == 3);
-                }
-            }
+        boolean[][] previous = grid;
+        grid = nextGrid;
+        nextGrid = previous;
+        generation++;
+
+        // Only the flipped cells touch the hash and the history, so both cost O(changes) per step
+        universeHash.apply(engine.changes(), grid);
+        history.record(engine.changes(), grid);
+        updateTimeline();
+
+        long period = cycleDetector.record(universeHash.value(), generation);
+        if (period > 0) {
+            statusLabel.setText(describeCycle(period));
+            if (stopWhenStableBox.isSelected() && isRunning) toggleGame();
+        } else {
+            statusLabel.setText("Generation " + generation);
         }
+        gridPanel.repaint();
+    }
 
-        grid = nextGrid;
+    private String describeCycle(long period) {
+        long since = generation - period;
+        if (universeHash.population() == 0) {
+            return String.format("Generation %d: the universe died out", generation);
+        }
+        if (period == 1) {
+            return String.format("Generation %d: still life since generation %d", generation, since);
+        }
+        return String.format("Generation %d: oscillating with period %d since generation %d", generation, period, since);
+    }
+
+    /** Starts hashing and cycle detection over after the grid was replaced outside of the simulation. */
+    private void resetTracking() {
+        generation = 0;
+        universeHash.reset(grid);
+        cycleDetector.reset();
+        cycleDetector.record(universeHash.value(), generation);
+        history.reset(grid, generation);
+        historyStale = false;
+        updateTimeline();
+        statusLabel.setText("Generation 0");
+    }
+
+    /** Makes hand-drawn cells the new start of the history; once per stroke, not per cell. */
+    private void commitEdits() {
+        if (!historyStale) return;
+        history.reset(grid, generation);
+        historyStale = false;
+        updateTimeline();
+    }
+
+    /** Restores a recorded generation into the grid; the run continues from there when restarted. */
+    private void rewindTo(long target) {
+        if (target == generation) return;
+        if (isRunning) toggleGame();
+        if (historyStale) {
+            // The drawn cells became the only recorded generation, there is nothing to rewind to
+            commitEdits();
+            return;
+        }
+
+        history.restore(target, grid);
+        generation = target;
+        universeHash.reset(grid);
+        cycleDetector.reset();
+        cycleDetector.record(universeHash.value(), generation);
+        statusLabel.setText(String.format("Generation %d of %d", generation, history.lastGeneration()));
         gridPanel.repaint();
     }
 
-    private int countNeighbors(int row, int col) {
-        int count = 0;
-        for (int r = row - 1; r <= row + 1; r++) {
-            for (int c = col - 1; c <= col + 1; c++) {
-                if (r == row && c == col) continue;
-                if (r >= 0 && r < ROWS && c >= 0 && c < COLS) {
-                    if (grid[r][c]) count++;
+    private void updateTimeline() {
+        updatingTimeline = true;
+        timelineSlider.setMinimum((int) history.firstGeneration());
+        timelineSlider.setMaximum((int) history.lastGeneration());
+        timelineSlider.setValue((int) generation);
+        updatingTimeline = false;
+    }
+
+    /** Replaces the universe with an empty one of the given size; sizes come from files, hence long. */
+    private void resizeUniverse(long newRows, long newCols) throws IOException {
+        if (newRows * newCols > MAX_CELLS) {
+            throw new IOException(String.format("Universe of %d x %d cells is too large", newRows, newCols));
+        }
+        rows = (int) newRows;
+        cols = (int) newCols;
+        grid = new boolean[rows][cols];
+        nextGrid = new boolean[rows][cols];
+        gridPanel.updateSize();
+    }
+
+    // --- Patterns & Snapshots ---
+
+    private void importPattern() {
+        File file = chooseFile(false, "Life patterns (*.rle, *.cells)", "rle", "cells", "txt");
+        if (file == null) return;
+
+        try {
+            Pattern pattern = PatternIO.read(file.toPath());
+            LifeRule patternRule = null;
+            String unsupportedRule = null;
+            if (pattern.rule() != null) {
+                try {
+                    patternRule = parsePatternRule(pattern.rule());
+                } catch (IllegalArgumentException ex) {
+                    unsupportedRule = pattern.rule(); // The cells are still worth having under the current rule
                 }
             }
+            if (isRunning) toggleGame();
+
+            resizeUniverse(Math.max(DEFAULT_ROWS, pattern.height() + 2L * IMPORT_MARGIN),
+                    Math.max(DEFAULT_COLS, pattern.width() + 2L * IMPORT_MARGIN));
+            pattern.stamp(grid, (rows - pattern.height()) / 2, (cols - pattern.width()) / 2);
+            if (patternRule != null) {
+                engine.setRule(patternRule);
+                updateTitle();
+            }
+            resetTracking();
+            gridPanel.repaint();
+            if (unsupportedRule != null) {
+                JOptionPane.showMessageDialog(this,
+                        "Rule \"" + unsupportedRule + "\" is not supported; the pattern runs under " + engine.rule() + ".",
+                        "Unsupported rule", JOptionPane.WARNING_MESSAGE);
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            showError("Failed to import pattern: " + ex.getMessage());
+        }
+    }
+
+    /** Parses an RLE header rule; a bounded-grid suffix such as ":T100,100" is dropped, the universe has its own edges. */
+    private static LifeRule parsePatternRule(String notation) {
+        int suffix = notation.indexOf(':');
+        return LifeRule.parse(suffix >= 0 ? notation.substring(0, suffix) : notation);
+    }
+
+    private void exportPattern(boolean rle) {
+        File file = rle
+                ? chooseFile(true, "RLE patterns (*.rle)", "rle")
+                : chooseFile(true, "Plaintext patterns (*.cells)", "cells");
+        if (file == null) return;
+
+        try (Writer out = Files.newBufferedWriter(file.toPath())) {
+            if (rle) {
+                PatternIO.writeRle(grid, engine.rule().notation(), out);
+            } else {
+                PatternIO.writePlaintext(grid, file.getName(), out);
+            }
+        } catch (IOException ex) {
+            showError("Failed to export pattern: " + ex.getMessage());
+        }
+    }
+
+    private void saveSnapshot() {
+        File file = chooseFile(true, "Universe snapshots (*.lifesnap)", "lifesnap");
+        if (file == null) return;
+
+        try {
+            UniverseSnapshot.save(grid, file.toPath());
+        } catch (IOException ex) {
+            showError("Failed to save snapshot: " + ex.getMessage());
+        }
+    }
+
+    private void loadSnapshot() {
+        File file = chooseFile(false, "Universe snapshots (*.lifesnap)", "lifesnap");
+        if (file == null) return;
+
+        try {
+            boolean[][] restored = UniverseSnapshot.load(file.toPath(), MAX_CELLS);
+            if (isRunning) toggleGame();
+
+            rows = restored.length;
+            cols = restored[0].length;
+            grid = restored;
+            nextGrid = new boolean[rows][cols];
+            resetTracking();
+            gridPanel.updateSize();
+            gridPanel.repaint();
+        } catch (IOException ex) {
+            showError("Failed to load snapshot: " + ex.getMessage());
+        }
+    }
+
+    private File chooseFile(boolean save, String description, String... extensions) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter(description, extensions));
+
+        int result = save ? chooser.showSaveDialog(this) : chooser.showOpenDialog(this);
+        if (result != JFileChooser.APPROVE_OPTION) return null;
+
+        File file = chooser.getSelectedFile();
+        if (save && !file.getName().contains(".")) {
+            file = Path.of(file.getPath() + "." + extensions[0]).toFile();
         }
-        return count;
+        return file;
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
     }
 
     // --- Helper for UI ---
@@ -175,8 +488,11 @@ public class Main extends JFrame {
     // --- Custom Panel for Drawing the Grid ---
     private class GridPanel extends JPanel {
 
+        private final Color colorAlive = new Color(50, 205, 50);
+        private final Color colorDead = new Color(30, 30, 30);
+
         public GridPanel() {
-            setPreferredSize(new Dimension(COLS * CELL_SIZE, ROWS * CELL_SIZE));
+            updateSize();
             setBackground(Color.BLACK);
 
             MouseAdapter mouseHandler = new MouseAdapter() {
@@ -185,17 +501,29 @@ public class Main extends JFrame {
 
                 @Override
                 public void mouseDragged(MouseEvent e) { toggleCell(e.getX(), e.getY()); }
+
+                @Override
+                public void mouseReleased(MouseEvent e) { commitEdits(); }
             };
 
             addMouseListener(mouseHandler);
             addMouseMotionListener(mouseHandler);
         }
 
+        private void updateSize() {
+            setPreferredSize(new Dimension(cols * CELL_SIZE, rows * CELL_SIZE));
+            revalidate();
+        }
+
         private void toggleCell(int x, int y) {
             int col = x / CELL_SIZE;
             int row = y / CELL_SIZE;
-            if (row >= 0 && row < ROWS && col >= 0 && col < COLS) {
+            if (row >= 0 && row < rows && col >= 0 && col < cols && !grid[row][col]) {
                 grid[row][col] = true;
+                universeHash.flip(row * cols + col, true);
+                cycleDetector.reset(); // Hand-drawn cells start a new history
+                cycleDetector.record(universeHash.value(), generation);
+                historyStale = true; // Re-encoding the whole universe waits until the stroke ends
                 repaint();
             }
         }
@@ -203,12 +531,20 @@ public class Main extends JFrame {
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-            for (int row = 0; row < ROWS; row++) {
-                for (int col = 0; col < COLS; col++) {
+
+            // Only the visible part of a (possibly huge) universe is painted
+            Rectangle clip = g.getClipBounds();
+            int firstRow = Math.max(0, clip.y / CELL_SIZE);
+            int lastRow = Math.min(rows, (clip.y + clip.height) / CELL_SIZE + 1);
+            int firstCol = Math.max(0, clip.x / CELL_SIZE);
+            int lastCol = Math.min(cols, (clip.x + clip.width) / CELL_SIZE + 1);
+
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
                     if (grid[row][col]) {
-                        g.setColor(new Color(50, 205, 50)); // Alive
+                        g.setColor(colorAlive); // Alive
                     } else {
-                        g.setColor(new Color(30, 30, 30)); // Dead
+                        g.setColor(colorDead); // Dead
                     }
                     g.fillRect(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE - 1, CELL_SIZE - 1);
                 }
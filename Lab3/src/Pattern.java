@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+/**
+ * A Life pattern stored as horizontal runs of live cells.
+ * Each run takes three ints (row, col, length), so even multi-million-cell
+ * patterns stay compact and never go through an intermediate String.
+ */
+final class Pattern {
+    private int[] runs = new int[3 * 64];
+    private int runCount;
+    private int width;
+    private int height;
+    private String rule;
+
+    void addRun(int row, int col, int length) {
+        if (length <= 0) return;
+        int base = runCount * 3;
+        if (base + 3 > runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+        }
+        runs[base] = row;
+        runs[base + 1] = col;
+        runs[base + 2] = length;
+        runCount++;
+
+        width = Math.max(width, col + length);
+        height = Math.max(height, row + 1);
+    }
+
+    /** Grows the declared bounds, e.g. from an RLE header that includes trailing dead cells. */
+    void declareSize(int width, int height) {
+        this.width = Math.max(this.width, width);
+        this.height = Math.max(this.height, height);
+    }
+
+    int width() { return width; }
+
+    int height() { return height; }
+
+    /** Rule from the pattern header (e.g. "B3/S23"), or {@code null} if none was given. */
+    String rule() { return rule; }
+
+    void setRule(String rule) { this.rule = rule; }
+
+    long liveCells() {
+        long total = 0;
+        for (int i = 0; i < runCount; i++) total += runs[i * 3 + 2];
+        return total;
+    }
+
+    /** Writes the pattern into {@code grid} with its top-left corner at (top, left), clipping at the edges. */
+    void stamp(boolean[][] grid, int top, int left) {
+        int rows = grid.length;
+        int cols = rows == 0 ? 0 : grid[0].length;
+        for (int i = 0; i < runCount; i++) {
+            int row = runs[i * 3] + top;
+            if (row < 0 || row >= rows) continue;
+            int from = Math.max(0, runs[i * 3 + 1] + left);
+            int to = Math.min(cols, runs[i * 3 + 1] + left + runs[i * 3 + 2]);
+            if (from < to) Arrays.fill(grid[row], from, to, true);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads and writes the standard Life pattern formats:
+ * RLE (.rle) and plaintext (.cells).
+ * <p>
+ * Readers work directly on a byte buffer and feed runs into a {@link Pattern},
+ * so a pattern body is never turned into Strings, no matter how large it is.
+ */
+final class PatternIO {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int RLE_LINE_LIMIT = 70;
+
+    private PatternIO() {
+    }
+
+    // ==========================================
+    // READING
+    // ==========================================
+
+    static Pattern read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /** Detects the format from the first meaningful character: RLE starts with '#' or 'x'. */
+    static Pattern read(InputStream in) throws IOException {
+        ByteSource src = new ByteSource(in);
+        int first = src.peekNonSpace();
+        if (first == '#' || first == 'x') {
+            return readRle(src);
+        }
+        return readPlaintext(src);
+    }
+
+    private static Pattern readRle(ByteSource src) throws IOException {
+        Pattern pattern = new Pattern();
+
+        // Comment lines (#N, #C, #O, ...) and the "x = .., y = .., rule = .." header come first
+        int c = src.peekNonSpace();
+        while (c == '#' || c == 'x') {
+            if (c == 'x') {
+                parseRleHeader(src.readLine(), pattern);
+            } else {
+                src.skipLine();
+            }
+            c = src.peekNonSpace();
+        }
+
+        int row = 0;
+        int col = 0;
+        int count = 0;
+        while ((c = src.next()) != -1 && c != '!') {
+            if (c >= '0' && c <= '9') {
+                if (count > (Integer.MAX_VALUE - 9) / 10) throw new IOException("Run count too large in RLE data");
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            // Whitespace and multi-state prefixes (p..y) do not consume the pending run count
+            if (c <= ' ' || (c >= 'p' && c <= 'y')) continue;
+
+            int n = count == 0 ? 1 : count;
+            count = 0;
+            if (c == 'b' || c == '.') {
+                col = advance(col, n);
+            } else if (c == '$') {
+                row = advance(row, n);
+                col = 0;
+            } else if (c == 'o' || (c >= 'A' && c <= 'X')) {
+                int end = advance(col, n);
+                pattern.addRun(row, col, n);
+                col = end;
+            } else {
+                throw new IOException("Unexpected character '" + (char) c + "' in RLE data");
+            }
+        }
+        return pattern;
+    }
+
+    /** A position moved by a run; patterns beyond the int range are rejected, not wrapped around. */
+    private static int advance(int position, int run) throws IOException {
+        if (position > Integer.MAX_VALUE - run) throw new IOException("RLE pattern is too large");
+        return position + run;
+    }
+
+    private static void parseRleHeader(String line, Pattern pattern) throws IOException {
+        int width = 0;
+        int height = 0;
+        for (String part : line.split(",")) {
+            int eq = part.indexOf('=');
+            if (eq < 0) continue;
+            String key = part.substring(0, eq).trim();
+            String value = part.substring(eq + 1).trim();
+            try {
+                switch (key) {
+                    case "x" -> width = Integer.parseInt(value);
+                    case "y" -> height = Integer.parseInt(value);
+                    case "rule" -> pattern.setRule(value);
+                    default -> { }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid RLE header: " + line);
+            }
+        }
+        pattern.declareSize(width, height);
+    }
+
+    private static Pattern readPlaintext(ByteSource src) throws IOException {
+        Pattern pattern = new Pattern();
+        int row = 0;
+        int col = 0;
+        int runStart = -1;
+        int c;
+        while ((c = src.next()) != -1) {
+            if (c == '!' && col == 0) {
+                src.skipLine();
+                continue;
+            }
+            if (c == '\r') continue;
+            if (c == '\n') {
+                if (runStart >= 0) pattern.addRun(row, runStart, col - runStart);
+                runStart = -1;
+                row++;
+                col = 0;
+                continue;
+            }
+            if (c == 'O' || c == '*') {
+                if (runStart < 0) runStart = col;
+            } else if (runStart >= 0) {
+                pattern.addRun(row, runStart, col - runStart);
+                runStart = -1;
+            }
+            col++;
+        }
+        if (runStart >= 0) pattern.addRun(row, runStart, col - runStart);
+        pattern.declareSize(0, col > 0 ? row + 1 : row);
+        return pattern;
+    }
+
+    // ==========================================
+    // WRITING
+    // ==========================================
+
+    /** Writes the bounding box of the live cells in RLE, wrapped at 70 columns. */
+    static void writeRle(boolean[][] grid, String rule, Writer out) throws IOException {
+        int[] box = boundingBox(grid);
+        if (box == null) {
+            out.write("x = 0, y = 0, rule = " + rule + "\n!\n");
+            return;
+        }
+        int top = box[0], left = box[1], bottom = box[2], right = box[3];
+        out.write("x = " + (right - left) + ", y = " + (bottom - top) + ", rule = " + rule + "\n");
+
+        RleLine line = new RleLine(out);
+        int lastRow = top;
+        for (int r = top; r < bottom; r++) {
+            boolean[] cells = grid[r];
+            int end = right;
+            while (end > left && !cells[end - 1]) end--;
+            if (end == left) continue; // Empty rows are folded into the next '$' count
+
+            if (r > lastRow) line.token(r - lastRow, '$');
+            lastRow = r;
+
+            int c = left;
+            while (c < end) {
+                boolean alive = cells[c];
+                int start = c;
+                while (c < end && cells[c] == alive) c++;
+                line.token(c - start, alive ? 'o' : 'b');
+            }
+        }
+        line.token(1, '!');
+        out.write('\n');
+    }
+
+    /** Writes the bounding box of the live cells as plaintext ('.' dead, 'O' alive). */
+    static void writePlaintext(boolean[][] grid, String name, Writer out) throws IOException {
+        out.write("!Name: " + name + "\n");
+        int[] box = boundingBox(grid);
+        if (box == null) return;
+
+        for (int r = box[0]; r < box[2]; r++) {
+            boolean[] cells = grid[r];
+            int end = box[3];
+            while (end > box[1] && !cells[end - 1]) end--;
+            for (int c = box[1]; c < end; c++) {
+                out.write(cells[c] ? 'O' : '.');
+            }
+            out.write('\n');
+        }
+    }
+
+    /** Returns {top, left, bottom, right} (exclusive) of the live cells, or null if the grid is empty. */
+    private static int[] boundingBox(boolean[][] grid) {
+        int top = Integer.MAX_VALUE, left = Integer.MAX_VALUE, bottom = -1, right = -1;
+        for (int r = 0; r < grid.length; r++) {
+            boolean[] cells = grid[r];
+            for (int c = 0; c < cells.length; c++) {
+                if (cells[c]) {
+                    top = Math.min(top, r);
+                    bottom = r;
+                    left = Math.min(left, c);
+                    right = Math.max(right, c);
+                }
+            }
+        }
+        return bottom < 0 ? null : new int[]{top, left, bottom + 1, right + 1};
+    }
+
+    // ==========================================
+    // HELPERS
+    // ==========================================
+
+    /** Emits RLE tokens and keeps output lines within the conventional 70 characters. */
+    private static final class RleLine {
+        private final Writer out;
+        private int length;
+
+        RleLine(Writer out) {
+            this.out = out;
+        }
+
+        void token(int count, char tag) throws IOException {
+            int digits = count > 1 ? stringSize(count) : 0;
+            if (length + digits + 1 > RLE_LINE_LIMIT) {
+                out.write('\n');
+                length = 0;
+            }
+            if (count > 1) out.write(Integer.toString(count));
+            out.write(tag);
+            length += digits + 1;
+        }
+
+        private static int stringSize(int value) {
+            int size = 1;
+            while (value >= 10) {
+                value /= 10;
+                size++;
+            }
+            return size;
+        }
+    }
+
+    /** Minimal buffered byte reader; patterns are plain ASCII. */
+    private static final class ByteSource {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int pos;
+        private int limit;
+
+        ByteSource(InputStream in) {
+            this.in = in;
+        }
+
+        int next() throws IOException {
+            if (pos == limit && !fill()) return -1;
+            return buffer[pos++] & 0xFF;
+        }
+
+        int peekNonSpace() throws IOException {
+            while (true) {
+                if (pos == limit && !fill()) return -1;
+                int c = buffer[pos] & 0xFF;
+                if (c > ' ') return c;
+                pos++;
+            }
+        }
+
+        void skipLine() throws IOException {
+            int c;
+            do {
+                c = next();
+            } while (c != -1 && c != '\n');
+        }
+
+        /** Only used for short header lines. */
+        String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = next()) != -1 && c != '\n') {
+                if (c != '\r') sb.append((char) c);
+            }
+            return sb.toString();
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer);
+            if (n <= 0) return false;
+            pos = 0;
+            limit = n;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Zobrist-style hash of the live cells: the XOR of one pseudo-random key per live cell.
+ * <p>
+ * Flipping a cell XORs its key in or out, so a generation only costs as much
+ * as the number of cells that changed. Keys are derived from the cell index
+ * with the SplitMix64 finalizer instead of being stored, which keeps a
+ * 16k x 16k universe from needing 2 GB of key tables.
+ * <p>
+ * The number of live cells is kept alongside: a hash of 0 is not proof of an
+ * empty universe, a population of 0 is.
+ */
+final class UniverseHash {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private long value;
+    private long population;
+
+    long value() {
+        return value;
+    }
+
+    long population() {
+        return population;
+    }
+
+    /** Recomputes the hash from scratch, e.g. after the grid was edited or replaced. */
+    void reset(boolean[][] grid) {
+        value = 0;
+        population = 0;
+        int index = 0;
+        for (boolean[] row : grid) {
+            for (boolean alive : row) {
+                if (alive) {
+                    value ^= key(index);
+                    population++;
+                }
+                index++;
+            }
+        }
+    }
+
+    /** Accounts for one cell that was just set to {@code alive}. */
+    void flip(int index, boolean alive) {
+        value ^= key(index);
+        population += alive ? 1 : -1;
+    }
+
+    /**
+     * Accounts for the cells that flipped to reach {@code grid}; without change
+     * tracking ({@code changes} is null) the hash is recomputed from the grid.
+     */
+    void apply(CellChanges changes, boolean[][] grid) {
+        if (changes == null) {
+            reset(grid);
+            return;
+        }
+        int cols = grid.length == 0 ? 0 : grid[0].length;
+        long h = value;
+        long live = population;
+        for (int i = 0, n = changes.size(); i < n; i++) {
+            int index = changes.get(i);
+            h ^= key(index);
+            live += grid[index / cols][index % cols] ? 1 : -1;
+        }
+        value = h;
+        population = live;
+    }
+
+    private static long key(int index) {
+        long z = (index + 1) * SEED;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary snapshot of the universe: a 16-byte header followed by
+ * the cells packed 64 per long, row by row.
+ * A 16k x 16k universe takes 32 MB and is written with a single channel write.
+ */
+final class UniverseSnapshot {
+    private static final int MAGIC = 0x4C494645; // "LIFE"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private UniverseSnapshot() {
+    }
+
+    static void save(boolean[][] grid, Path path) throws IOException {
+        int rows = grid.length;
+        int cols = rows == 0 ? 0 : grid[0].length;
+        long[] words = pack(grid, rows, cols);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + words.length * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols);
+        buffer.asLongBuffer().put(words);
+        buffer.rewind();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /** Reads a snapshot, refusing universes above {@code maxCells} before anything is allocated. */
+    static boolean[][] load(Path path, long maxCells) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a Life snapshot: " + path.getFileName());
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the whole header is in memory
+            }
+            header.flip();
+
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a Life snapshot: " + path.getFileName());
+            }
+            int rows = header.getInt();
+            int cols = header.getInt();
+            long cells = (long) rows * cols;
+            if (rows <= 0 || cols <= 0 || size - HEADER_BYTES != (long) wordCount(cells) * Long.BYTES) {
+                throw new IOException("Corrupted Life snapshot: " + path.getFileName());
+            }
+            if (cells > maxCells) {
+                throw new IOException(String.format("Universe of %d x %d cells is too large", rows, cols));
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) (size - HEADER_BYTES));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is in memory
+            }
+            buffer.flip();
+
+            LongBuffer longs = buffer.asLongBuffer();
+            long[] words = new long[longs.remaining()];
+            longs.get(words);
+            return unpack(words, rows, cols);
+        }
+    }
+
+    private static long[] pack(boolean[][] grid, int rows, int cols) {
+        long[] words = new long[wordCount((long) rows * cols)];
+        long bit = 0;
+        for (boolean[] row : grid) {
+            for (int c = 0; c < cols; c++, bit++) {
+                if (row[c]) words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return words;
+    }
+
+    private static boolean[][] unpack(long[] words, int rows, int cols) {
+        boolean[][] grid = new boolean[rows][cols];
+        long bit = 0;
+        for (boolean[] row : grid) {
+            for (int c = 0; c < cols; c++, bit++) {
+                row[c] = (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+            }
+        }
+        return grid;
+    }
+
+    private static int wordCount(long cells) {
+        return (int) ((cells + 63) >>> 6);
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * How the AI picks its move. One instance plays one opponent; the game
+ * calls {@link #chooseMove} before the player's move is known and
+ * {@link #observe} once the round has been played.
+ */
+interface AiStrategy {
+
+    Move chooseMove(RandomGenerator random);
+
+    default void observe(Move user, Move ai) {
+    }
+
+    static AiStrategy random() {
+        return random -> Move.values()[random.nextInt(Move.values().length)];
+    }
+
+    /** Counters the move a fresh order-k predictor expects from the player. */
+    static AiStrategy markov(int order) {
+        MarkovPredictor predictor = new MarkovPredictor(order);
+        return new AiStrategy() {
+            @Override
+            public Move chooseMove(RandomGenerator random) {
+                return counterPrediction(predictor.predict(), random);
+            }
+
+            @Override
+            public void observe(Move user, Move ai) {
+                predictor.observe(user);
+            }
+        };
+    }
+
+    /** Counters the most frequent player move among the last {@code window} rounds. */
+    static AiStrategy windowed(int window) {
+        RecentStats stats = new RecentStats(window, 1);
+        return learning(stats, stats::windowedPrediction);
+    }
+
+    /** Counters the player move with the highest weight, weights halving every {@code halfLife} rounds. */
+    static AiStrategy decayed(double halfLife) {
+        RecentStats stats = new RecentStats(1, halfLife);
+        return learning(stats, stats::decayedPrediction);
+    }
+
+    /** Counters a prediction that is kept up to date elsewhere, e.g. by the player's profile. */
+    static AiStrategy following(Supplier<Move> prediction) {
+        return random -> counterPrediction(prediction.get(), random);
+    }
+
+    private static AiStrategy learning(RecentStats stats, Supplier<Move> prediction) {
+        return new AiStrategy() {
+            @Override
+            public Move chooseMove(RandomGenerator random) {
+                return counterPrediction(prediction.get(), random);
+            }
+
+            @Override
+            public void observe(Move user, Move ai) {
+                stats.record(user, ai, RpsRules.resultOf(user, ai));
+            }
+        };
+    }
+
+    private static Move counterPrediction(Move predicted, RandomGenerator random) {
+        return predicted == null ? random().chooseMove(random) : RpsRules.counter(predicted);
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiFunction;
+import java.util.stream.LongStream;
+
+/**
+ * Binary history format: an 8-byte header followed by one byte per round.
+ * <p>
+ * A round is one of 27 combinations of player move, AI move and result,
+ * stored as {@code player * 9 + ai * 3 + result}. Counting a file means
+ * counting those codes on memory-mapped segments in parallel; move and
+ * result totals then come from small lookup tables.
+ */
+final class BinaryHistory {
+    static final int HEADER_BYTES = 8;
+    static final int CODES = 27;
+
+    private static final int MAGIC = 0x52505331; // "RPS1"
+    private static final int SEGMENT_BYTES = 64 << 20;
+
+    // Lookup tables: code -> ordinal of each part
+    private static final int[] USER_OF = new int[CODES];
+    private static final int[] AI_OF = new int[CODES];
+    private static final int[] RESULT_OF = new int[CODES];
+
+    static {
+        for (int code = 0; code < CODES; code++) {
+            USER_OF[code] = code / 9;
+            AI_OF[code] = code / 3 % 3;
+            RESULT_OF[code] = code % 3;
+        }
+    }
+
+    private BinaryHistory() {
+    }
+
+    static byte encode(Move user, Move ai, Result result) {
+        return (byte) (user.ordinal() * 9 + ai.ordinal() * 3 + result.ordinal());
+    }
+
+    static Move user(int code) {
+        return Move.values()[USER_OF[code]];
+    }
+
+    static int userOrdinal(int code) {
+        return USER_OF[code];
+    }
+
+    static int resultOrdinal(int code) {
+        return RESULT_OF[code];
+    }
+
+    static Move ai(int code) {
+        return Move.values()[AI_OF[code]];
+    }
+
+    static Result result(int code) {
+        return Result.values()[RESULT_OF[code]];
+    }
+
+    /** Creates an empty history file with a header unless the file already exists. */
+    static void createIfMissing(Path path) throws IOException {
+        if (Files.exists(path)) return;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(header());
+        }
+    }
+
+    static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(0).flip();
+    }
+
+    static void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (channel.read(header, 0) != HEADER_BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary game history");
+        }
+    }
+
+    /**
+     * Maps the bytes between two offsets in segments, processes the segments in
+     * parallel and adds up the resulting counters.
+     *
+     * @param counter gets a mapped segment and its file offset, returns counters as long as {@code zero}
+     */
+    static long[] reduceSegments(FileChannel channel, long from, long to,
+                                 BiFunction<MappedByteBuffer, Long, long[]> counter, long[] zero) throws IOException {
+        if (to <= from) return zero;
+
+        long segments = (to - from + SEGMENT_BYTES - 1) / SEGMENT_BYTES;
+        try {
+            return LongStream.range(0, segments).parallel()
+                    .mapToObj(segment -> {
+                        long start = from + segment * SEGMENT_BYTES;
+                        try {
+                            return counter.apply(channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                    Math.min(SEGMENT_BYTES, to - start)), start);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .reduce(zero, BinaryHistory::merge);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Adds a histogram into move and result totals using the lookup tables. */
+    static void addTo(long[] histogram, long[] moveCounts, long[] resultCounts) {
+        for (int code = 0; code < CODES; code++) {
+            moveCounts[USER_OF[code]] += histogram[code];
+            resultCounts[RESULT_OF[code]] += histogram[code];
+        }
+    }
+
+    private static long[] merge(long[] a, long[] b) {
+        long[] sum = new long[a.length];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = a[i] + b[i];
+        }
+        return sum;
+    }
+}
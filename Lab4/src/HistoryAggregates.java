@@ -0,0 +1,219 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Running move and result counters and the move predictor over a history,
+ * together with the number of rounds they cover.
+ * <p>
+ * The counters are persisted next to the history, so a later start only
+ * counts the rounds appended since then instead of re-reading everything.
+ * Compacted segments contribute their stored histograms, and their runs
+ * reach the predictor one run at a time.
+ * Counters and offset are always saved together, so a crash between saves
+ * only means a slightly longer catch-up next time.
+ */
+final class HistoryAggregates {
+    private static final int MAGIC = 0x52505341; // "RPSA"
+    private static final int VERSION = 4;
+
+    private final HistoryLog history;
+    private final Path aggregatesPath;
+    private final long[] moveCounts = new long[Move.values().length];
+    private final long[] resultCounts = new long[Result.values().length];
+    private final MarkovPredictor predictor;
+    private long consumedRounds;
+
+    HistoryAggregates(HistoryLog history, Path aggregatesPath, int predictorOrder) {
+        this.history = history;
+        this.aggregatesPath = aggregatesPath;
+        this.predictor = new MarkovPredictor(predictorOrder);
+    }
+
+    /** Loads the saved counters (if any) and counts whatever was appended to the history since. */
+    void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(aggregatesPath))) {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                consumedRounds = in.readLong();
+                for (int i = 0; i < moveCounts.length; i++) moveCounts[i] = in.readLong();
+                for (int i = 0; i < resultCounts.length; i++) resultCounts[i] = in.readLong();
+                predictor.readFrom(in);
+            }
+        } catch (NoSuchFileException ignored) {
+            // First start: everything is caught up from the history below
+        } catch (IOException e) {
+            clear(); // Unreadable aggregates are rebuilt from the history
+        }
+
+        if (catchUp()) save();
+    }
+
+    /**
+     * Counts the rounds appended after the consumed ones.
+     *
+     * @return true if anything new was consumed
+     */
+    boolean catchUp() throws IOException {
+        long[] histogram = new long[BinaryHistory.CODES];
+        HistoryLog.RoundReader reader = new HistoryLog.RoundReader() {
+            @Override
+            public void codes(FileChannel channel, long from, long to) throws IOException {
+                long[] counted = countRounds(channel, from, to);
+                for (int code = 0; code < histogram.length; code++) histogram[code] += counted[code];
+            }
+
+            @Override
+            public void run(int code, long length) {
+                histogram[code] += length;
+                predictor.observeRun(BinaryHistory.user(code), length);
+            }
+
+            @Override
+            public void segment(long[] totals, HistoryLog.Segment body) throws IOException {
+                // Totals come from the segment header; only the predictor needs the runs
+                for (int code = 0; code < histogram.length; code++) histogram[code] += totals[code];
+                HistoryLog.forEachRound(body, 0, new HistoryLog.RoundReader() {
+                    @Override
+                    public void codes(FileChannel channel, long from, long to) throws IOException {
+                        countRounds(channel, from, to);
+                    }
+
+                    @Override
+                    public void run(int code, long length) {
+                        predictor.observeRun(BinaryHistory.user(code), length);
+                    }
+
+                    @Override
+                    public void segment(long[] histogram, HistoryLog.Segment body) {
+                        throw new IllegalStateException("Segments do not nest");
+                    }
+                });
+            }
+        };
+
+        long total = history.read(consumedRounds, reader);
+        if (total < consumedRounds) {
+            // The history was truncated or replaced, start over
+            boolean hadData = consumedRounds > 0;
+            clear();
+            total = history.read(0, reader);
+            if (total == 0) return hadData;
+        } else if (total == consumedRounds) {
+            return false;
+        }
+
+        BinaryHistory.addTo(histogram, moveCounts, resultCounts);
+        consumedRounds = total;
+        return true;
+    }
+
+    /**
+     * Feeds the rounds between two offsets to the predictor in one pass over the
+     * mapped file, returning their histogram by code.
+     */
+    private long[] countRounds(FileChannel channel, long from, long to) throws IOException {
+        long[] histogram = new long[BinaryHistory.CODES];
+
+        // Until the predictor has a full context, lower orders see moves that no window covers;
+        // pieces shorter than a context are observed one by one as well
+        int order = predictor.order();
+        long single = Math.min(to - from, predictor.missingContext());
+        if (to - from - single < order) single = to - from;
+        for (long position = from; position < from + single; position++) {
+            int code = read(channel, position, 1).get(0) & 0xFF;
+            if (code >= BinaryHistory.CODES) throw new IOException("Corrupt game history at offset " + position);
+            histogram[code]++;
+            predictor.observe(BinaryHistory.user(code));
+        }
+        long start = from + single;
+        if (start == to) return histogram;
+
+        int firstContext = predictor.context();
+        long[] windows = BinaryHistory.reduceSegments(channel, start, to, (segment, offset) -> {
+            try {
+                // A segment's first windows reach back into the previous segment
+                int context = offset == start ? firstContext : predictor.contextOf(read(channel, offset - order, order));
+                return predictor.countWindows(segment, context);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (IllegalArgumentException e) {
+                throw new UncheckedIOException(new IOException("Corrupt game history at offset " + offset, e));
+            }
+        }, predictor.emptyWindows());
+        predictor.addWindows(windows, to - start, predictor.contextOf(read(channel, to - order, order)));
+
+        for (int window = 0; window < windows.length; window++) {
+            histogram[window % BinaryHistory.CODES] += windows[window];
+        }
+        return histogram;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        return buffer.flip();
+    }
+
+    /** Accounts for a round the application itself just appended. */
+    void record(Move user, Result result) {
+        moveCounts[user.ordinal()]++;
+        resultCounts[result.ordinal()]++;
+        predictor.observe(user);
+        consumedRounds++;
+    }
+
+    /** Writes the aggregates to a temp file and atomically replaces the previous ones. */
+    void save() throws IOException {
+        // A unique name, since another instance may be saving the same aggregates
+        Path tmp = Files.createTempFile(aggregatesPath.toAbsolutePath().getParent(), aggregatesPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(consumedRounds);
+                for (long count : moveCounts) out.writeLong(count);
+                for (long count : resultCounts) out.writeLong(count);
+                predictor.writeTo(out);
+            }
+            Files.move(tmp, aggregatesPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Number of rounds from the start of the history that the counters cover. */
+    long consumedRounds() {
+        return consumedRounds;
+    }
+
+    long count(Move move) {
+        return moveCounts[move.ordinal()];
+    }
+
+    long count(Result result) {
+        return resultCounts[result.ordinal()];
+    }
+
+    /** Predictor over every move in the history, kept in step by {@link #catchUp} and {@link #record}. */
+    MarkovPredictor predictor() {
+        return predictor;
+    }
+
+    private void clear() {
+        consumedRounds = 0;
+        Arrays.fill(moveCounts, 0);
+        Arrays.fill(resultCounts, 0);
+        predictor.clear();
+    }
+}
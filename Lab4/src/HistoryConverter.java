@@ -0,0 +1,119 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Converts a CSV game history ({@code Player,Ai,Result} per line) into the binary format.
+ * <p>
+ * Usage: {@code java HistoryConverter game_history.csv game_history.bin}
+ */
+public class HistoryConverter {
+    private static final byte[][] MOVE_NAMES = names(Move.values());
+    private static final byte[][] RESULT_NAMES = names(Result.values());
+    // Valid lines are under 32 bytes; anything longer is malformed and is not buffered
+    private static final int MAX_LINE_BYTES = 64;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Використання: java HistoryConverter <history.csv> <history.bin>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        long[] counts = convert(Path.of(args[0]), Path.of(args[1]));
+        System.out.printf("Конвертовано раундів: %d, пропущено рядків: %d (%.1f мс)%n",
+                counts[0], counts[1], (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Streams the CSV into a new binary file, written to a temp file and moved into place.
+     *
+     * @return {converted rounds, skipped lines}
+     */
+    static long[] convert(Path csv, Path bin) throws IOException {
+        Path tmp = bin.resolveSibling(bin.getFileName() + ".tmp");
+        long converted = 0;
+        long skipped = 0;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(csv), 1 << 16);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            out.write(BinaryHistory.header().array());
+
+            byte[] line = new byte[MAX_LINE_BYTES];
+            int length = 0;
+            boolean overlong = false; // The rest of the current line is discarded
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    int code = overlong ? -1 : parseLine(line, length);
+                    if (code >= 0) {
+                        out.write(code);
+                        converted++;
+                    } else if (length > 0) {
+                        skipped++;
+                    }
+                    length = 0;
+                    overlong = false;
+                } else if (b != '\r' && !overlong) {
+                    if (length == line.length) {
+                        overlong = true;
+                    } else {
+                        line[length++] = (byte) b;
+                    }
+                }
+            }
+            if (length > 0) {
+                int code = overlong ? -1 : parseLine(line, length);
+                if (code >= 0) {
+                    out.write(code);
+                    converted++;
+                } else {
+                    skipped++;
+                }
+            }
+        }
+        Files.move(tmp, bin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new long[]{converted, skipped};
+    }
+
+    /** Returns the binary code of a "Player,Ai,Result" line, or -1 if the line is malformed. */
+    private static int parseLine(byte[] line, int length) {
+        int first = indexOf(line, 0, length);
+        int second = first < 0 ? -1 : indexOf(line, first + 1, length);
+        if (second < 0 || indexOf(line, second + 1, length) >= 0) return -1;
+
+        int user = match(MOVE_NAMES, line, 0, first);
+        int ai = match(MOVE_NAMES, line, first + 1, second);
+        int result = match(RESULT_NAMES, line, second + 1, length);
+        if (user < 0 || ai < 0 || result < 0) return -1;
+        return user * 9 + ai * 3 + result;
+    }
+
+    private static int indexOf(byte[] line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == ',') return i;
+        }
+        return -1;
+    }
+
+    private static int match(byte[][] names, byte[] line, int from, int to) {
+        for (int i = 0; i < names.length; i++) {
+            if (Arrays.equals(names[i], 0, names[i].length, line, from, to)) return i;
+        }
+        return -1;
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,515 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One player's history: a compacted file followed by binary round logs.
+ * <p>
+ * New rounds go to the live log {@code <base>.bin}. When a profile is opened
+ * and the live log has grown large, it is sealed by renaming it to
+ * {@code <base>.<seq>.bin}. The compactor folds sealed logs into
+ * {@code <base>.rle}, one segment per log. A segment stores its code
+ * histogram up front, then the rounds as (code, run length) pairs, or as
+ * plain codes when that is smaller. Readers that only need totals take the
+ * histogram and skip the body.
+ * <p>
+ * The compacted file records {@code coveredSeq}: every sealed log with a
+ * lower sequence number is already inside it. Compaction writes a new file
+ * next to the old one, renames it over the old one and only then deletes
+ * the covered logs. A crash at any point leaves either the old file and
+ * all logs, or the new file and some logs it covers, which are ignored and
+ * deleted by the next compaction.
+ * <p>
+ * Several instances may use the same history, so every operation holds a
+ * lock on {@code <base>.lock}, and a lock within this process as well.
+ * Readers, and writers for each batch, hold it shared. Sealing and
+ * compaction hold it exclusively, from reading {@code coveredSeq} to the
+ * last rename or deletion. A sealed log therefore never receives another
+ * round, and no file is renamed or deleted while anyone reads it. There is
+ * only one lock, because the system tracks file locks per process rather
+ * than per thread and would report waiting for a second one as a deadlock.
+ */
+final class HistoryLog {
+    private static final int MAGIC = 0x52505352; // "RPSR"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int SEGMENT_HEADER_BYTES = 2 * Long.BYTES + Integer.BYTES + BinaryHistory.CODES * Long.BYTES;
+    private static final int RUNS = 0;
+    private static final int PLAIN = 1;
+    private static final int CHUNK_BYTES = 64 << 20;
+    // Fills the rest of a chunk when the next run would not fit; codes are always below 27
+    private static final int PADDING = 0xFF;
+    private static final int MAX_RUN_BYTES = 1 + 10;
+
+    private final Path dir;
+    private final String base;
+    // File locks belong to the whole process, so holders within it take this one first
+    private final ReentrantLock lock = new ReentrantLock();
+    // Never closed: on some systems closing any channel of the file drops every lock of the process on it
+    private FileChannel lockChannel; // Guarded by lock
+
+    HistoryLog(Path dir, String base) {
+        this.dir = dir;
+        this.base = base;
+    }
+
+    /** File the writer appends new rounds to. */
+    Path livePath() {
+        return dir.resolve(base + ".bin");
+    }
+
+    private Path compactedPath() {
+        return dir.resolve(base + ".rle");
+    }
+
+    private Path sealedPath(int seq) {
+        return dir.resolve(base + "." + seq + ".bin");
+    }
+
+    /** Work done while holding the history's lock. */
+    interface Locked<T> {
+        T run() throws IOException;
+    }
+
+    /** Runs a writer's batch; while it runs the live log is not sealed. */
+    <T> T writingLive(Locked<T> batch) throws IOException {
+        return locked(true, batch);
+    }
+
+    /**
+     * Runs {@code work} under the lock. Nested calls run under the outer lock: one
+     * process cannot hold two locks on the same file, and shared work needs no more
+     * than whatever the caller holds.
+     */
+    private <T> T locked(boolean shared, Locked<T> work) throws IOException {
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1) return work.run();
+            if (lockChannel == null) {
+                lockChannel = FileChannel.open(dir.resolve(base + ".lock"), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE); // Shared locks need a readable channel
+            }
+            FileLock fileLock = lockChannel.lock(0, 1, shared);
+            try {
+                return work.run();
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Receives rounds in history order. */
+    interface RoundReader {
+        /** Plain codes between two offsets of a file. */
+        void codes(FileChannel channel, long from, long to) throws IOException;
+
+        /** {@code length} rounds with the same code. */
+        void run(int code, long length);
+
+        /**
+         * A whole compacted segment: its histogram and its body. Readers that
+         * need the rounds themselves pass the body to {@link #forEachRound}.
+         */
+        void segment(long[] histogram, Segment body) throws IOException;
+    }
+
+    /** Body of a compacted segment. */
+    record Segment(FileChannel channel, long start, long length, int encoding) {
+    }
+
+    /** Delivers the rounds of a segment body, after skipping the first {@code skip}, as codes or runs. */
+    static void forEachRound(Segment body, long skip, RoundReader reader) throws IOException {
+        if (body.encoding == PLAIN) {
+            reader.codes(body.channel, body.start + skip, body.start + body.length);
+            return;
+        }
+        for (long offset = 0; offset < body.length; offset += CHUNK_BYTES) {
+            // Runs never straddle chunks: the encoder pads them (see writeRuns)
+            MappedByteBuffer runs = body.channel.map(FileChannel.MapMode.READ_ONLY, body.start + offset,
+                    Math.min(CHUNK_BYTES, body.length - offset));
+            while (runs.hasRemaining()) {
+                int code = runs.get() & 0xFF;
+                if (code == PADDING) break;
+                long length = readVarLong(runs);
+                if (skip >= length) {
+                    skip -= length;
+                    continue;
+                }
+                reader.run(code, length - skip);
+                skip = 0;
+            }
+        }
+    }
+
+    /** Total number of rounds, over the compacted file and all logs. */
+    long rounds() throws IOException {
+        return locked(true, () -> {
+            long total = 0;
+            for (Part part : parts()) total += part.rounds;
+            return total;
+        });
+    }
+
+    /**
+     * Passes every round from {@code fromRound} on to the reader, in order.
+     *
+     * @return the total number of rounds in the history when it was read
+     */
+    long read(long fromRound, RoundReader reader) throws IOException {
+        return locked(true, () -> readLocked(fromRound, reader));
+    }
+
+    private long readLocked(long fromRound, RoundReader reader) throws IOException {
+        List<Part> parts = parts();
+        long first = 0;
+        for (Part part : parts) {
+            long end = first + part.rounds;
+            if (end > fromRound) {
+                long skip = Math.max(0, fromRound - first);
+                try (FileChannel channel = FileChannel.open(part.path, StandardOpenOption.READ)) {
+                    if (part.histogram == null) {
+                        BinaryHistory.checkHeader(channel);
+                        reader.codes(channel, part.start + skip, part.start + part.rounds);
+                    } else if (skip == 0) {
+                        reader.segment(part.histogram, new Segment(channel, part.start, part.length, part.encoding));
+                    } else {
+                        forEachRound(new Segment(channel, part.start, part.length, part.encoding), skip, reader);
+                    }
+                }
+            }
+            first = end;
+        }
+        return first;
+    }
+
+    /** Reads the codes of at most {@code rounds} latest rounds, in history order. */
+    ByteBuffer readTail(int rounds) throws IOException {
+        return locked(true, () -> readTailLocked(rounds));
+    }
+
+    private ByteBuffer readTailLocked(int rounds) throws IOException {
+        long total = rounds();
+        ByteBuffer tail = ByteBuffer.allocate((int) Math.min(rounds, total));
+        read(total - tail.capacity(), new RoundReader() {
+            @Override
+            public void codes(FileChannel channel, long from, long to) throws IOException {
+                // The live log may have grown since the tail was sized
+                ByteBuffer target = tail.slice(tail.position(), (int) Math.min(to - from, tail.remaining()));
+                while (target.hasRemaining()) {
+                    if (channel.read(target, from + target.position()) < 0) throw new IOException("History ended early");
+                }
+                tail.position(tail.position() + target.capacity());
+            }
+
+            @Override
+            public void run(int code, long length) {
+                for (long i = Math.min(length, tail.remaining()); i > 0; i--) tail.put((byte) code);
+            }
+
+            @Override
+            public void segment(long[] histogram, Segment body) throws IOException {
+                forEachRound(body, 0, this);
+            }
+        });
+        return tail.flip();
+    }
+
+    /**
+     * Seals the live log if it holds more than {@code minBytes}, and creates a live log
+     * if there is none. Waits for the batches being written and for a running
+     * compaction; writers reopen the live log before their next batch (see
+     * {@link HistoryWriter}).
+     *
+     * @return true if a log was sealed
+     */
+    boolean rotate(long minBytes) throws IOException {
+        return locked(false, () -> {
+            Path live = livePath();
+            boolean sealed = Files.exists(live) && Files.size(live) > Math.max(minBytes, BinaryHistory.HEADER_BYTES);
+            if (sealed) {
+                int seq = coveredSeq();
+                for (int other : sealedSeqs()) seq = Math.max(seq, other + 1);
+                Files.move(live, sealedPath(seq), StandardCopyOption.ATOMIC_MOVE);
+            }
+            // Created while no writer can append, so the header always comes first
+            BinaryHistory.createIfMissing(live);
+            return sealed;
+        });
+    }
+
+    /** Whether there are sealed logs that are not compacted yet. */
+    boolean needsCompaction() throws IOException {
+        return locked(true, () -> {
+            int covered = coveredSeq();
+            for (int seq : sealedSeqs()) {
+                if (seq >= covered) return true;
+            }
+            return false;
+        });
+    }
+
+    // ==========================================
+    // COMPACTION
+    // ==========================================
+
+    /**
+     * Folds the sealed logs into the compacted file. The lock is held exclusively
+     * throughout, so readers and writers wait for the encoding; sealing only
+     * happens when a profile is opened, so that is rare.
+     */
+    void compact() throws IOException {
+        locked(false, () -> {
+            compactLocked();
+            return null;
+        });
+    }
+
+    private void compactLocked() throws IOException {
+        int covered = coveredSeq();
+        List<Integer> pending = new ArrayList<>();
+        for (int seq : sealedSeqs()) {
+            if (seq >= covered) pending.add(seq);
+        }
+        if (pending.isEmpty()) {
+            deleteCoveredLogs(covered);
+            return;
+        }
+        pending.sort(null);
+        int newCovered = pending.getLast() + 1;
+
+        Path compacted = compactedPath();
+        Path tmp = Files.createTempFile(dir, base, ".rle.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            int segments = 0;
+            long position = FILE_HEADER_BYTES;
+            if (Files.exists(compacted)) {
+                // Existing segments are copied as they are
+                try (FileChannel old = FileChannel.open(compacted, StandardOpenOption.READ)) {
+                    segments = readFileHeader(old)[1];
+                    long length = old.size() - FILE_HEADER_BYTES;
+                    for (long copied = 0; copied < length; ) {
+                        copied += old.transferTo(FILE_HEADER_BYTES + copied, length - copied, out.position(position + copied));
+                    }
+                    position += length;
+                }
+            }
+            for (int seq : pending) {
+                try (FileChannel log = FileChannel.open(sealedPath(seq), StandardOpenOption.READ)) {
+                    BinaryHistory.checkHeader(log);
+                    position = writeSegment(log, out, position);
+                }
+                segments++;
+            }
+            out.write(ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION)
+                    .putInt(newCovered).putInt(segments).flip(), 0);
+            out.force(true);
+            Files.move(tmp, compacted, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        deleteCoveredLogs(newCovered);
+    }
+
+    private void deleteCoveredLogs(int covered) throws IOException {
+        for (int seq : sealedSeqs()) {
+            if (seq < covered) Files.deleteIfExists(sealedPath(seq));
+        }
+    }
+
+    /** Encodes one sealed log as a segment at {@code position}; returns the position after it. */
+    private static long writeSegment(FileChannel log, FileChannel out, long position) throws IOException {
+        long from = BinaryHistory.HEADER_BYTES;
+        long to = log.size();
+        long[] histogram = new long[BinaryHistory.CODES];
+
+        // First pass: histogram and the size of the run encoding
+        long runBytes = writeRuns(log, from, to, histogram, null, 0);
+        int encoding = runBytes < to - from ? RUNS : PLAIN;
+        long bodyStart = position + SEGMENT_HEADER_BYTES;
+        long bodyLength;
+        if (encoding == RUNS) {
+            bodyLength = writeRuns(log, from, to, new long[BinaryHistory.CODES], out, bodyStart);
+        } else {
+            bodyLength = to - from;
+            for (long copied = 0; copied < bodyLength; ) {
+                copied += log.transferTo(from + copied, bodyLength - copied, out.position(bodyStart + copied));
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        header.putLong(to - from).putLong(bodyLength).putInt(encoding);
+        for (long count : histogram) header.putLong(count);
+        out.write(header.flip(), position);
+        return bodyStart + bodyLength;
+    }
+
+    /**
+     * Run-length encodes the codes of a log, counting them into {@code histogram}.
+     * With a null {@code out} only the encoded size is computed.
+     */
+    private static long writeRuns(FileChannel log, long from, long to, long[] histogram,
+                                  FileChannel out, long outPosition) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long written = 0;
+        int runCode = -1;
+        long runLength = 0;
+        for (long chunk = from; chunk < to; chunk += CHUNK_BYTES) {
+            MappedByteBuffer codes = log.map(FileChannel.MapMode.READ_ONLY, chunk, Math.min(CHUNK_BYTES, to - chunk));
+            for (int i = 0, n = codes.limit(); i < n; i++) {
+                int code = codes.get(i) & 0xFF;
+                if (code >= BinaryHistory.CODES) throw new IOException("Corrupt game history at offset " + (chunk + i));
+                histogram[code]++;
+                if (code == runCode) {
+                    runLength++;
+                    continue;
+                }
+                if (runLength > 0) written = putRun(buffer, runCode, runLength, written, out, outPosition);
+                runCode = code;
+                runLength = 1;
+            }
+        }
+        if (runLength > 0) written = putRun(buffer, runCode, runLength, written, out, outPosition);
+        return flushRuns(buffer, written, out, outPosition);
+    }
+
+    private static long putRun(ByteBuffer buffer, int code, long length, long written,
+                               FileChannel out, long outPosition) throws IOException {
+        // Pad to the next chunk boundary instead of splitting a run across chunks
+        long offset = written + buffer.position();
+        long chunkEnd = (offset / CHUNK_BYTES + 1) * CHUNK_BYTES;
+        if (offset + MAX_RUN_BYTES > chunkEnd) {
+            while (offset < chunkEnd) {
+                if (!buffer.hasRemaining()) written = flushRuns(buffer, written, out, outPosition);
+                buffer.put((byte) PADDING);
+                offset++;
+            }
+        }
+        if (buffer.remaining() < MAX_RUN_BYTES) written = flushRuns(buffer, written, out, outPosition);
+        buffer.put((byte) code);
+        while ((length & ~0x7FL) != 0) {
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        return written;
+    }
+
+    private static long flushRuns(ByteBuffer buffer, long written, FileChannel out, long outPosition) throws IOException {
+        buffer.flip();
+        long length = buffer.remaining();
+        if (out != null) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer, outPosition + written + (length - buffer.remaining()));
+            }
+        }
+        buffer.clear();
+        return written + length;
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // ==========================================
+    // FILE LAYOUT
+    // ==========================================
+
+    /** A contiguous piece of the history: a compacted segment or a log. */
+    private record Part(Path path, long start, long length, long rounds, long[] histogram, int encoding) {
+    }
+
+    /** Lists the pieces of the history in order: compacted segments, uncovered sealed logs, the live log. */
+    private List<Part> parts() throws IOException {
+        List<Part> parts = new ArrayList<>();
+        Path compacted = compactedPath();
+        int covered = 0;
+        if (Files.exists(compacted)) {
+            try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.READ)) {
+                int[] header = readFileHeader(channel);
+                covered = header[0];
+                long position = FILE_HEADER_BYTES;
+                ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+                for (int i = 0; i < header[1]; i++) {
+                    segmentHeader.clear();
+                    while (segmentHeader.hasRemaining()) {
+                        if (channel.read(segmentHeader, position + segmentHeader.position()) < 0) {
+                            throw new IOException("Truncated compacted history " + compacted);
+                        }
+                    }
+                    segmentHeader.flip();
+                    long rounds = segmentHeader.getLong();
+                    long length = segmentHeader.getLong();
+                    int encoding = segmentHeader.getInt();
+                    long[] histogram = new long[BinaryHistory.CODES];
+                    for (int code = 0; code < histogram.length; code++) histogram[code] = segmentHeader.getLong();
+                    parts.add(new Part(compacted, position + SEGMENT_HEADER_BYTES, length, rounds, histogram, encoding));
+                    position += SEGMENT_HEADER_BYTES + length;
+                }
+            }
+        }
+
+        List<Integer> sealed = sealedSeqs();
+        sealed.sort(null);
+        for (int seq : sealed) {
+            if (seq >= covered) parts.add(logPart(sealedPath(seq)));
+        }
+        if (Files.exists(livePath())) parts.add(logPart(livePath()));
+        return parts;
+    }
+
+    private static Part logPart(Path path) throws IOException {
+        long rounds = Math.max(0, Files.size(path) - BinaryHistory.HEADER_BYTES);
+        return new Part(path, BinaryHistory.HEADER_BYTES, rounds, rounds, null, PLAIN);
+    }
+
+    /** Returns {coveredSeq, segment count}. */
+    private static int[] readFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        if (channel.read(header, 0) != FILE_HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a compacted game history");
+        }
+        return new int[]{header.getInt(8), header.getInt(12)};
+    }
+
+    private int coveredSeq() throws IOException {
+        try (FileChannel channel = FileChannel.open(compactedPath(), StandardOpenOption.READ)) {
+            return readFileHeader(channel)[0];
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private List<Integer> sealedSeqs() throws IOException {
+        List<Integer> seqs = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return seqs;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, base + ".*.bin")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String seq = name.substring(base.length() + 1, name.length() - ".bin".length());
+                if (!seq.isEmpty() && seq.chars().allMatch(Character::isDigit)) seqs.add(Integer.parseInt(seq));
+            }
+        }
+        return seqs;
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Appends history records on a background thread.
+ * <p>
+ * Records wait in a bounded queue. Once per flush interval the writer drains
+ * the queue into one buffer, writes it with a single channel write and forces
+ * it to disk (group commit). A crash therefore loses at most one interval of
+ * rounds, and the EDT never touches the file.
+ * <p>
+ * Another instance may seal the live log by renaming it away (see
+ * {@link HistoryLog#rotate}) while this writer still has it open. Each batch
+ * is written holding the history's lock shared, and sealing holds it
+ * exclusively. Under that lock the writer compares the identity of the file
+ * at its path with the one it holds and reopens the path if they differ. The
+ * rename can therefore never happen between the check and the write, and a
+ * sealed log receives no further rounds.
+ */
+final class HistoryWriter implements Closeable {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final HistoryLog log;
+    private final Path path;
+    // Writer thread only, until close; opened with the first batch
+    private FileChannel channel;
+    private Object fileKey; // Of the file the channel has open
+    private final long flushIntervalMs;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread thread;
+
+    // Guarded by 'this': flush tickets requested by callers and the last one the writer completed
+    private long requestedFlush;
+    private long completedFlush;
+    private boolean closing;
+
+    HistoryWriter(HistoryLog log, long flushIntervalMs) {
+        this.log = log;
+        this.path = log.livePath();
+        this.flushIntervalMs = flushIntervalMs;
+        this.thread = new Thread(this::run, "history-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Queues a record; blocks only if the writer has fallen a whole queue behind. */
+    void append(byte[] record) {
+        if (queue.offer(record)) return;
+
+        // Queue is full: wake the writer early instead of waiting for the interval
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Waits until everything appended so far is written and forced to disk. */
+    synchronized void flush() {
+        long ticket = ++requestedFlush;
+        notifyAll();
+        while (completedFlush < ticket && thread.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Flushes the remaining records and stops the writer thread. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) channel.close();
+    }
+
+    private void run() {
+        List<byte[]> batch = new ArrayList<>();
+        while (true) {
+            long ticket;
+            boolean stop;
+            synchronized (this) {
+                // Group commit: collect records for one interval unless a flush or close is requested,
+                // or a burst already filled half of the queue
+                if (!closing && requestedFlush == completedFlush && queue.size() < QUEUE_CAPACITY / 2) {
+                    try {
+                        wait(flushIntervalMs);
+                    } catch (InterruptedException e) {
+                        closing = true;
+                    }
+                }
+                ticket = requestedFlush;
+                stop = closing;
+            }
+
+            queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                try {
+                    writeBatch(batch);
+                } catch (IOException e) {
+                    System.err.println("Помилка запису в файл: " + e.getMessage());
+                }
+                batch.clear();
+            }
+
+            synchronized (this) {
+                completedFlush = ticket;
+                notifyAll();
+            }
+            if (stop && queue.isEmpty()) return;
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Follows a rotation by another instance; called under the history's lock. File systems
+     * without file keys get the path reopened for every batch.
+     */
+    private void reopenIfRotated() throws IOException {
+        if (channel != null) {
+            try {
+                Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                if (key != null && key.equals(fileKey)) return;
+            } catch (NoSuchFileException e) {
+                // Sealing creates the next live log, so it was deleted; recreated below
+            }
+            channel.close();
+        }
+        try {
+            BinaryHistory.createIfMissing(path);
+        } catch (FileAlreadyExistsException ignored) {
+            // Another instance created it first
+        }
+        channel = open(path);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private void writeBatch(List<byte[]> batch) throws IOException {
+        log.writingLive(() -> {
+            reopenIfRotated();
+            writeRecords(batch);
+            return null;
+        });
+    }
+
+    private void writeRecords(List<byte[]> batch) throws IOException {
+        buffer.clear();
+        for (byte[] record : batch) {
+            if (record.length > buffer.remaining()) {
+                drainBuffer();
+            }
+            if (record.length > buffer.capacity()) {
+                channel.write(ByteBuffer.wrap(record));
+            } else {
+                buffer.put(record);
+            }
+        }
+        drainBuffer();
+        channel.force(false);
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,9 +1,17 @@
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.random.RandomGenerator;
 
 public class Main extends JFrame {
 
@@ -11,9 +19,21 @@ public class Main extends JFrame {
     private final Font mainFont = new Font("Segoe UI", Font.PLAIN, 14);
     private final Font boldFont = new Font("Segoe UI", Font.BOLD, 14);
     private final Font headerFont = new Font("Segoe UI", Font.BOLD, 22);
-    private final List<Move> currentSessionMoves = new ArrayList<>();
-    private final List<Move> globalMoves = new ArrayList<>();
-    private final String historyFilePath = "game_history.csv";
+    // Order of the move predictor: how many previous player moves form a context
+    private static final int PREDICTOR_ORDER = Math.clamp(Integer.getInteger("rps.predictor.order", 2), 0, MarkovPredictor.MAX_ORDER);
+    // Histories from before player profiles; they become the default player's history on first start
+    private final String historyFilePath = "game_history.bin";
+    private final String legacyHistoryFilePath = "game_history.csv";
+    private static final String DEFAULT_PLAYER = "Гравець";
+    // Rounds are appended by a background writer that group-commits every flush interval
+    private static final long HISTORY_FLUSH_INTERVAL_MS = Long.getLong("rps.history.flushMs", 200);
+    // Recent statistics: the last N rounds, and weights that halve every half-life rounds
+    private static final int RECENT_WINDOW = Math.max(1, Integer.getInteger("rps.stats.window", 50));
+    private static final int RECENT_HALF_LIFE = Math.max(1, Integer.getInteger("rps.stats.halfLife", 20));
+    // One history per player, with an index of per-player counters
+    private final PlayerStore playerStore = new PlayerStore(Path.of("players"), PREDICTOR_ORDER, HISTORY_FLUSH_INTERVAL_MS,
+            RECENT_WINDOW, RECENT_HALF_LIFE);
+    private PlayerStore.Profile profile;
     // --- GUI Components ---
     private final JPanel cardPanel;
     private final CardLayout cardLayout;
@@ -27,13 +47,27 @@ public class Main extends JFrame {
     private int targetRounds;
     private int currentRound;
     private int aiMode;
+    private AiStrategy aiStrategy;
+    private final RandomGenerator random = new Random();
+    // The AI move does not depend on the player's choice, so it is picked while the player is still deciding
+    private final ExecutorService aiPrecompute = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "ai-precompute");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<Move> nextAiMove;
+    // Time from a move click to the repaint showing its result
+    private long clickCount;
+    private long clickLatencyTotalNanos;
+    private long clickLatencyMaxNanos;
     private JSpinner roundsSpinner;
+    private JTextField playerNameField;
     private JComboBox<String> aiModeCombo;
     public Main() {
         // --- Window Setup ---
         setTitle("Криниця - Ножиці - Папір");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(550, 400);
+        setSize(550, 460);
         setLocationRelativeTo(null);
         setResizable(false);
 
@@ -55,6 +89,20 @@ public class Main extends JFrame {
 
         add(cardPanel);
         cardLayout.show(cardPanel, "MENU");
+
+        // --- Player Histories ---
+        try {
+            playerStore.load();
+            migrateLegacyHistory();
+        } catch (IOException e) {
+            System.err.println("Помилка читання файлу: " + e.getMessage());
+        }
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeProfile();
+            }
+        });
     }
 
     // Entry Point
@@ -89,9 +137,21 @@ public class Main extends JFrame {
         gbc.gridy = 0;
         panel.add(title, gbc);
 
-        // Rounds Spinner
+        // Player Name
         gbc.gridwidth = 1;
         gbc.gridy = 1;
+        JLabel playerLabel = new JLabel("Ім'я гравця:");
+        playerLabel.setFont(boldFont);
+        panel.add(playerLabel, gbc);
+
+        playerNameField = new JTextField(DEFAULT_PLAYER);
+        playerNameField.setFont(mainFont);
+        gbc.gridx = 1;
+        panel.add(playerNameField, gbc);
+
+        // Rounds Spinner
+        gbc.gridx = 0;
+        gbc.gridy = 2;
         JLabel roundsLabel = new JLabel("Кількість раундів:");
         roundsLabel.setFont(boldFont);
         panel.add(roundsLabel, gbc);
@@ -103,12 +163,13 @@ public class Main extends JFrame {
 
         // AI Mode Dropdown
         gbc.gridx = 0;
-        gbc.gridy = 2;
+        gbc.gridy = 3;
         JLabel modeLabel = new JLabel("Рівень інтелекту (ШІ):");
         modeLabel.setFont(boldFont);
         panel.add(modeLabel, gbc);
 
-        String[] modes = {"Випадковий вибір (Легко)", "Аналіз поточного сеансу (Середньо)", "Аналіз минулих ігор з файлу (Складно)"};
+        String[] modes = {"Випадковий вибір (Легко)", "Аналіз поточного сеансу (Середньо)", "Аналіз минулих ігор з файлу (Складно)",
+                "Аналіз останніх " + RECENT_WINDOW + " ігор (Складно)", "Аналіз зі згасанням старих ігор (Складно)"};
         aiModeCombo = new JComboBox<>(modes);
         aiModeCombo.setFont(mainFont);
         aiModeCombo.setBackground(Color.WHITE);
@@ -120,7 +181,7 @@ public class Main extends JFrame {
         styleButton(startBtn, new Color(40, 167, 69));
         startBtn.addActionListener(_ -> startGame());
         gbc.gridx = 0;
-        gbc.gridy = 3;
+        gbc.gridy = 4;
         gbc.gridwidth = 2;
         panel.add(startBtn, gbc);
 
@@ -128,7 +189,7 @@ public class Main extends JFrame {
         JButton statsBtn = new JButton("Переглянути статистику");
         styleButton(statsBtn, new Color(108, 117, 125));
         statsBtn.addActionListener(_ -> showStatistics());
-        gbc.gridy = 4;
+        gbc.gridy = 5;
         panel.add(statsBtn, gbc);
 
         return panel;
@@ -178,11 +239,19 @@ public class Main extends JFrame {
         targetRounds = (Integer) roundsSpinner.getValue();
         aiMode = aiModeCombo.getSelectedIndex();
         currentRound = 1;
-        currentSessionMoves.clear();
 
-        if (aiMode == 2) {
-            loadGlobalHistory();
+        selectProfile(playerNameField.getText());
+        if (aiMode >= 2) {
+            refreshProfile();
         }
+        aiStrategy = switch (aiMode) {
+            case 1 -> AiStrategy.markov(PREDICTOR_ORDER);
+            // The player's own past games; fed by saveToHistory
+            case 2 -> profile != null ? AiStrategy.following(profile.aggregates().predictor()::predict) : AiStrategy.markov(PREDICTOR_ORDER);
+            case 3 -> profile != null ? AiStrategy.following(profile.recent()::windowedPrediction) : AiStrategy.windowed(RECENT_WINDOW);
+            case 4 -> profile != null ? AiStrategy.following(profile.recent()::decayedPrediction) : AiStrategy.decayed(RECENT_HALF_LIFE);
+            default -> AiStrategy.random();
+        };
 
         updateGameUI();
         logLabel.setText("Зробіть свій перший хід!");
@@ -190,6 +259,7 @@ public class Main extends JFrame {
 
         toggleGameButtons(true);
         returnBtn.setVisible(false);
+        prepareAiMove();
 
         cardLayout.show(cardPanel, "GAME");
     }
@@ -199,10 +269,11 @@ public class Main extends JFrame {
     // ==========================================
 
     private void playRound(Move userMove) {
-        currentSessionMoves.add(userMove);
-
-        Move aiMove = getAIMove();
-        Result result = calculateResult(userMove, aiMove);
+        long clickedAt = System.nanoTime();
+        // The AI committed to its move before the player's move is observed
+        Move aiMove = awaitAiMove();
+        aiStrategy.observe(userMove, aiMove);
+        Result result = RpsRules.resultOf(userMove, aiMove);
 
         logLabel.setText(String.format("Ви: %s | ПК: %s. %s", userMove, aiMove, result.text));
         logLabel.setForeground(result.color);
@@ -218,7 +289,34 @@ public class Main extends JFrame {
             endSession();
         } else {
             updateGameUI();
+            prepareAiMove();
         }
+        // Runs after the repaint queued by the label changes above
+        SwingUtilities.invokeLater(() -> recordClickLatency(System.nanoTime() - clickedAt));
+    }
+
+    /** Starts picking the AI move for the next round; it only reads state that playRound has finished updating. */
+    private void prepareAiMove() {
+        AiStrategy strategy = aiStrategy;
+        nextAiMove = aiPrecompute.submit(() -> strategy.chooseMove(random));
+    }
+
+    /** The precomputed AI move; usually ready long before the click. */
+    private Move awaitAiMove() {
+        try {
+            return nextAiMove.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return aiStrategy.chooseMove(random);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("AI move failed", e.getCause());
+        }
+    }
+
+    private void recordClickLatency(long nanos) {
+        clickCount++;
+        clickLatencyTotalNanos += nanos;
+        clickLatencyMaxNanos = Math.max(clickLatencyMaxNanos, nanos);
     }
 
     private void endSession() {
@@ -227,111 +325,88 @@ public class Main extends JFrame {
         returnBtn.setVisible(true);
     }
 
-    private Move getAIMove() {
-        return switch (aiMode) {
-            case 1 -> predictUserMove(currentSessionMoves);
-            case 2 -> predictUserMove(globalMoves);
-            default -> getRandomMove();
-        };
-    }
-
-    private Move predictUserMove(List<Move> history) {
-        if (history == null || history.isEmpty()) {
-            return getRandomMove();
-        }
+    private void saveToHistory(Move user, Move ai, Result result) {
+        if (profile == null) return;
 
-        int w = 0, s = 0, p = 0;
-        for (Move move : history) {
-            switch (move) {
-                case WELL -> w++;
-                case SCISSORS -> s++;
-                case PAPER -> p++;
-            }
-        }
+        profile.record(user, ai, result);
+    }
 
-        Move predictedUserMove = Move.WELL;
-        if (s > w && s >= p) predictedUserMove = Move.SCISSORS;
-        if (p > w && p >= s) predictedUserMove = Move.PAPER;
+    // ==========================================
+    // FILE I/O AND STATISTICS
+    // ==========================================
 
-        return switch (predictedUserMove) {
-            case WELL -> Move.PAPER;
-            case SCISSORS -> Move.WELL;
-            case PAPER -> Move.SCISSORS;
-        };
-    }
+    private void migrateLegacyHistory() throws IOException {
+        if (!playerStore.isEmpty()) return;
 
-    private Move getRandomMove() {
-        int r = (int) (Math.random() * 3);
-        return Move.values()[r];
+        Path history = Path.of(historyFilePath);
+        Path legacy = Path.of(legacyHistoryFilePath);
+        if (!Files.exists(history) && Files.exists(legacy)) {
+            long[] counts = HistoryConverter.convert(legacy, history);
+            System.out.println("Історію перенесено у " + historyFilePath + ": " + counts[0] + " раундів");
+        }
+        playerStore.importLegacy(history, DEFAULT_PLAYER);
     }
 
-    private Result calculateResult(Move user, Move ai) {
-        if (user == ai) return Result.TIE;
-
-        return switch (user) {
-            case WELL -> (ai == Move.SCISSORS) ? Result.WIN : Result.LOSE;
-            case SCISSORS -> (ai == Move.PAPER) ? Result.WIN : Result.LOSE;
-            case PAPER -> (ai == Move.WELL) ? Result.WIN : Result.LOSE;
-        };
+    /** Switches the history that new rounds go to, unless the player is already selected. */
+    private void selectProfile(String name) {
+        name = name.strip();
+        if (name.isEmpty()) name = DEFAULT_PLAYER;
+        // Longer names are cut, so the same long name always selects the same profile
+        if (name.length() > PlayerStore.MAX_NAME_LENGTH) name = name.substring(0, PlayerStore.MAX_NAME_LENGTH).strip();
+        if (profile != null && profile.name().equals(name)) return;
+
+        closeProfile();
+        try {
+            profile = playerStore.open(name);
+        } catch (IOException e) {
+            System.err.println("Помилка читання файлу: " + e.getMessage());
+        }
     }
 
-    private void saveToHistory(Move user, Move ai, Result result) {
-        try (FileWriter fw = new FileWriter(historyFilePath, true); PrintWriter pw = new PrintWriter(fw)) {
-            // CSV: Player,Ai,Result
-            pw.println(user.name() + "," + ai.name() + "," + result.name());
+    private void closeProfile() {
+        if (profile == null) return;
+        try {
+            // Pending rounds go to disk before the aggregates and the index claim to cover them
+            profile.close();
         } catch (IOException e) {
             System.err.println("Помилка запису в файл: " + e.getMessage());
         }
+        profile = null;
     }
 
-    // ==========================================
-    // FILE I/O AND STATISTICS
-    // ==========================================
-
-    private void loadGlobalHistory() {
-        globalMoves.clear();
-        File file = new File(historyFilePath);
-        if (!file.exists()) return;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length > 0) {
-                    try {
-                        globalMoves.add(Move.valueOf(parts[0]));
-                    } catch (IllegalArgumentException ignored) {
-                    }
-                }
-            }
+    private void refreshProfile() {
+        if (profile == null) return;
+        try {
+            profile.refresh();
         } catch (IOException e) {
             System.err.println("Помилка читання файлу: " + e.getMessage());
         }
     }
 
     private void showStatistics() {
-        int wins = 0, losses = 0, ties = 0;
-        File file = new File(historyFilePath);
-
-        if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length == 3) {
-                        if ("WIN".equals(parts[2])) wins++;
-                        if ("LOSE".equals(parts[2])) losses++;
-                        if ("TIE".equals(parts[2])) ties++;
-                    }
-                }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(this, "Помилка читання статистики.");
-                return;
-            }
+        selectProfile(playerNameField.getText());
+        refreshProfile();
+
+        StringBuilder msg = new StringBuilder();
+        if (profile != null) {
+            HistoryAggregates own = profile.aggregates();
+            msg.append(String.format("Статистика гравця %s:\n\n Перемог: %d\n Поразок: %d\n Нічиїх: %d\n\n",
+                    profile.name(), own.count(Result.WIN), own.count(Result.LOSE), own.count(Result.TIE)));
+            RecentStats recent = profile.recent();
+            msg.append(String.format("Останні %d ігор:\n Перемог: %d\n Поразок: %d\n Нічиїх: %d\n\n",
+                    recent.windowSize(), recent.windowCount(Result.WIN), recent.windowCount(Result.LOSE), recent.windowCount(Result.TIE)));
+            msg.append(String.format("Зі згасанням (вага гри падає вдвічі кожні %d ігор):\n Перемог: %.0f%%\n Поразок: %.0f%%\n Нічиїх: %.0f%%\n\n",
+                    RECENT_HALF_LIFE, 100 * recent.decayedShare(Result.WIN), 100 * recent.decayedShare(Result.LOSE),
+                    100 * recent.decayedShare(Result.TIE)));
         }
-
-        String msg = String.format("Загальна глобальна статистика:\n\n Перемог: %d\n Поразок: %d\n Нічиїх: %d", wins, losses, ties);
-        JOptionPane.showMessageDialog(this, msg, "Статистика гравця", JOptionPane.INFORMATION_MESSAGE);
+        msg.append(String.format("Загальна глобальна статистика (гравців: %d):\n\n Перемог: %d\n Поразок: %d\n Нічиїх: %d",
+                playerStore.playerCount(), playerStore.totalCount(Result.WIN),
+                playerStore.totalCount(Result.LOSE), playerStore.totalCount(Result.TIE)));
+        if (clickCount > 0) {
+            msg.append(String.format("\n\nЗатримка ходу (від кліку до оновлення екрана):\n Середня: %.2f мс\n Максимальна: %.2f мс",
+                    clickLatencyTotalNanos / 1e6 / clickCount, clickLatencyMaxNanos / 1e6));
+        }
+        JOptionPane.showMessageDialog(this, msg.toString(), "Статистика гравця", JOptionPane.INFORMATION_MESSAGE);
     }
 
     private void toggleGameButtons(boolean enabled) {
@@ -359,31 +434,4 @@ public class Main extends JFrame {
         btn.setOpaque(true);
         btn.setMargin(new Insets(10, 15, 10, 15));
     }
-
-    // --- Enums for Game Logic ---
-    enum Move {
-        WELL("Криниця"), SCISSORS("Ножиці"), PAPER("Папір");
-        private final String name;
-
-        Move(String name) {
-            this.name = name;
-        }
-
-        @Override
-        public String toString() {
-            return name;
-        }
-    }
-
-    enum Result {
-        WIN("Перемога!", new Color(40, 167, 69)), LOSE("Поразка!", new Color(220, 53, 69)), TIE("Нічия! Переграємо раунд.", new Color(232, 169, 81));
-
-        private final String text;
-        private final Color color;
-
-        Result(String text, Color color) {
-            this.text = text;
-            this.color = color;
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Predicts the player's next move from the moves that preceded it.
+ * <p>
+ * For every order j from 0 to k there is a table of how often each move
+ * followed each context of j previous moves. Tables are updated as moves
+ * arrive, and a prediction looks at no more than k + 1 contexts: the
+ * longest one that has been seen often enough wins, rarer contexts back
+ * off to shorter ones.
+ */
+final class MarkovPredictor {
+    static final int MAX_ORDER = 4;
+
+    // A context must have been followed by at least this many moves before it is trusted
+    private static final int MIN_CONTEXT_COUNT = 3;
+    private static final int MOVES = 3;
+
+    private final int order;
+    // counts[j][context * 3 + move]: context holds the last j moves in base 3, the latest one lowest
+    private final long[][] counts;
+    private final int[] contextSizes;
+    // Lookup tables: (context * 3 + move) and (context * 27 + history code) -> next context
+    private final int[] dropOldest;
+    private final int[] nextContext;
+
+    private int recent;
+    private long seen;
+
+    MarkovPredictor(int order) {
+        if (order < 0 || order > MAX_ORDER) {
+            throw new IllegalArgumentException("Order must be between 0 and " + MAX_ORDER + ": " + order);
+        }
+        this.order = order;
+        this.counts = new long[order + 1][];
+        this.contextSizes = new int[order + 1];
+        for (int j = 0, size = 1; j <= order; j++, size *= MOVES) {
+            contextSizes[j] = size;
+            counts[j] = new long[size * MOVES];
+        }
+        int windows = contextSizes[order] * MOVES;
+        this.dropOldest = new int[windows];
+        for (int window = 0; window < windows; window++) {
+            dropOldest[window] = window % contextSizes[order];
+        }
+        this.nextContext = new int[contextSizes[order] * BinaryHistory.CODES];
+        for (int window = 0; window < nextContext.length; window++) {
+            int context = window / BinaryHistory.CODES;
+            nextContext[window] = dropOldest[context * MOVES + BinaryHistory.userOrdinal(window % BinaryHistory.CODES)];
+        }
+    }
+
+    int order() {
+        return order;
+    }
+
+    /** Returns the most likely next player move, or null while nothing has been observed. */
+    Move predict() {
+        for (int j = (int) Math.min(order, seen); j >= 0; j--) {
+            int base = recent % contextSizes[j] * MOVES;
+            long[] table = counts[j];
+            long total = table[base] + table[base + 1] + table[base + 2];
+            if (total >= MIN_CONTEXT_COUNT || (j == 0 && total > 0)) {
+                int best = 0;
+                for (int move = 1; move < MOVES; move++) {
+                    if (table[base + move] > table[base + best]) best = move;
+                }
+                return Move.values()[best];
+            }
+        }
+        return null;
+    }
+
+    void observe(Move move) {
+        int m = move.ordinal();
+        for (int j = (int) Math.min(order, seen); j >= 0; j--) {
+            counts[j][recent % contextSizes[j] * MOVES + m]++;
+        }
+        recent = dropOldest[recent * MOVES + m];
+        seen++;
+    }
+
+    /** Same as {@link #observe} called {@code length} times with the same move. */
+    void observeRun(Move move, long length) {
+        long single = Math.min(length, order);
+        for (long i = 0; i < single; i++) observe(move);
+        long rest = length - single;
+        if (rest == 0) return;
+
+        // The context is now this move repeated, and stays so for the rest of the run
+        int m = move.ordinal();
+        for (int j = 0; j <= order; j++) {
+            counts[j][recent % contextSizes[j] * MOVES + m] += rest;
+        }
+        seen += rest;
+    }
+
+    // ==========================================
+    // BULK UPDATES FROM THE HISTORY FILE
+    // ==========================================
+
+    /** Moves that still have to go through {@link #observe} before bulk updates apply. */
+    int missingContext() {
+        return (int) Math.max(0, order - seen);
+    }
+
+    int context() {
+        return recent;
+    }
+
+    /** Returns the context formed by the player moves of the given history codes (at least k of them). */
+    int contextOf(ByteBuffer codes) {
+        int context = 0;
+        for (int i = 0; i < codes.limit(); i++) {
+            context = dropOldest[context * MOVES + BinaryHistory.userOrdinal(codes.get(i))];
+        }
+        return context;
+    }
+
+    /**
+     * Counts how often each context of k moves was followed by each history code
+     * in a run of codes. Windows are indexed by {@code context * 27 + code}, so
+     * they also add up to a histogram of the codes. Does not touch the tables,
+     * so runs can be counted in parallel.
+     *
+     * @param context the context in front of the first code
+     */
+    long[] countWindows(ByteBuffer codes, int context) {
+        long[] windows = new long[nextContext.length];
+        int n = codes.limit();
+        int quarter = n / 4;
+        if (quarter < order) {
+            countLane(codes, 0, n, context, windows);
+            return windows;
+        }
+
+        // Each step waits for the previous context, so four independent lanes keep the CPU busy
+        int c0 = context;
+        int c1 = contextOf(codes.slice(quarter - order, order));
+        int c2 = contextOf(codes.slice(2 * quarter - order, order));
+        int c3 = contextOf(codes.slice(3 * quarter - order, order));
+        for (int i = 0; i < quarter; i++) {
+            int w0 = window(c0, codes.get(i), i);
+            int w1 = window(c1, codes.get(quarter + i), quarter + i);
+            int w2 = window(c2, codes.get(2 * quarter + i), 2 * quarter + i);
+            int w3 = window(c3, codes.get(3 * quarter + i), 3 * quarter + i);
+            windows[w0]++;
+            windows[w1]++;
+            windows[w2]++;
+            windows[w3]++;
+            c0 = nextContext[w0];
+            c1 = nextContext[w1];
+            c2 = nextContext[w2];
+            c3 = nextContext[w3];
+        }
+        countLane(codes, 4 * quarter, n, c3, windows);
+        return windows;
+    }
+
+    private void countLane(ByteBuffer codes, int from, int to, int context, long[] windows) {
+        for (int i = from; i < to; i++) {
+            int window = window(context, codes.get(i), i);
+            windows[window]++;
+            context = nextContext[window];
+        }
+    }
+
+    private static int window(int context, byte b, int position) {
+        int code = b & 0xFF;
+        if (code >= BinaryHistory.CODES) throw new IllegalArgumentException("Invalid history code " + code + " at " + position);
+        return context * BinaryHistory.CODES + code;
+    }
+
+    long[] emptyWindows() {
+        return new long[nextContext.length];
+    }
+
+    /**
+     * Adds counted windows to every order's table, the shorter contexts being
+     * suffixes of the full one. Same result as {@link #observe} per move, as
+     * long as the context was already complete.
+     */
+    void addWindows(long[] windows, long moves, int lastContext) {
+        for (int window = 0; window < windows.length; window++) {
+            long n = windows[window];
+            if (n == 0) continue;
+            int move = BinaryHistory.userOrdinal(window % BinaryHistory.CODES);
+            int full = window / BinaryHistory.CODES;
+            for (int j = 0; j <= order; j++) {
+                counts[j][full % contextSizes[j] * MOVES + move] += n;
+            }
+        }
+        recent = lastContext;
+        seen += moves;
+    }
+
+    void clear() {
+        for (long[] table : counts) Arrays.fill(table, 0);
+        recent = 0;
+        seen = 0;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(order);
+        out.writeInt(recent);
+        out.writeLong(seen);
+        for (long[] table : counts) {
+            for (long count : table) out.writeLong(count);
+        }
+    }
+
+    /** Reads tables saved by {@link #writeTo}; fails if they were built for another order. */
+    void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != order) throw new IOException("Predictor order changed");
+        recent = in.readInt();
+        seen = in.readLong();
+        for (long[] table : counts) {
+            for (int i = 0; i < table.length; i++) table[i] = in.readLong();
+        }
+    }
+}
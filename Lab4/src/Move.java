@@ -0,0 +1,16 @@
+/**
+ * Player and AI moves.
+ */
+enum Move {
+    WELL("Криниця"), SCISSORS("Ножиці"), PAPER("Папір");
+    private final String name;
+
+    Move(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,283 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-player game histories, sharded over subdirectories, with an index.
+ * <p>
+ * Every player gets an id when first seen; their rounds go to a
+ * {@link HistoryLog} named after the id in {@code <root>/<shard>/}, next to
+ * the usual aggregates sidecar. The index ({@code <root>/index.bin}) maps
+ * each name to its shard and id, the number of rounds its counts cover and
+ * the move and result counts themselves. Loading the index and opening a
+ * player therefore only touch that player's files, and totals over all
+ * players come from the index alone. An entry whose history another instance
+ * extended is brought up to date when that player is opened; until then the
+ * totals lag behind by those rounds. Names are at most
+ * {@link #MAX_NAME_LENGTH} characters, so every entry fits the index format.
+ * <p>
+ * When a player is opened, a live log larger than {@code rps.history.rotateBytes}
+ * is sealed and compacted on a background thread.
+ */
+final class PlayerStore {
+    private static final int MAGIC = 0x52505349; // "RPSI"
+    private static final int VERSION = 2;
+    // Same layout, but the covered position was a byte offset rather than a round count
+    private static final int BYTE_OFFSET_VERSION = 1;
+    static final int MAX_NAME_LENGTH = 64;
+    private static final int SHARDS = 16;
+    private static final long ROTATE_BYTES = Long.getLong("rps.history.rotateBytes", 1 << 20);
+
+    private final Path root;
+    private final Path indexPath;
+    private final int predictorOrder;
+    private final long flushIntervalMs;
+    private final int recentWindow;
+    private final double recentHalfLife;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // One instance per player, kept across reloads: its lock orders reads, writes, sealing and compaction
+    private final Map<Integer, HistoryLog> logs = new HashMap<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "history-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int nextId;
+
+    PlayerStore(Path root, int predictorOrder, long flushIntervalMs, int recentWindow, double recentHalfLife) {
+        this.root = root;
+        this.indexPath = root.resolve("index.bin");
+        this.predictorOrder = predictorOrder;
+        this.flushIntervalMs = flushIntervalMs;
+        this.recentWindow = recentWindow;
+        this.recentHalfLife = recentHalfLife;
+    }
+
+    /** Reads the index; no player history is touched until that player is opened. */
+    void load() throws IOException {
+        entries.clear();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(indexPath))) {
+            if (in.readInt() != MAGIC) throw new IOException("Unknown player index format");
+            int version = in.readInt();
+            if (version != VERSION && version != BYTE_OFFSET_VERSION) throw new IOException("Unknown player index format");
+            boolean stale = version != VERSION;
+            nextId = in.readInt();
+            for (int i = in.readInt(); i > 0; i--) {
+                Entry entry = new Entry(in.readUTF(), in.readInt(), in.readInt());
+                entry.rounds = in.readLong();
+                // A byte offset is no round count: unknown until the player is opened
+                if (stale) entry.rounds = -1;
+                for (int m = 0; m < entry.moveCounts.length; m++) entry.moveCounts[m] = in.readLong();
+                for (int r = 0; r < entry.resultCounts.length; r++) entry.resultCounts[r] = in.readLong();
+                entries.put(entry.name, entry);
+            }
+        } catch (NoSuchFileException ignored) {
+            // No players yet
+        }
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    int playerCount() {
+        return entries.size();
+    }
+
+    /** Totals over every player, straight from the index. */
+    long totalCount(Result result) {
+        long total = 0;
+        for (Entry entry : entries.values()) total += entry.resultCounts[result.ordinal()];
+        return total;
+    }
+
+    /**
+     * Adopts a history from before player profiles (and its aggregates sidecar)
+     * as the history of {@code name}. The file is moved, not copied.
+     */
+    void importLegacy(Path history, String name) throws IOException {
+        if (!Files.exists(history) || entries.containsKey(name)) return;
+
+        Entry entry = createEntry(name);
+        Files.createDirectories(shardPath(entry));
+        Files.move(history, log(entry).livePath());
+        Path sidecar = history.resolveSibling(history.getFileName() + ".agg");
+        if (Files.exists(sidecar)) Files.move(sidecar, aggregatesPath(entry));
+
+        HistoryAggregates aggregates = aggregates(entry);
+        aggregates.load();
+        entry.copyFrom(aggregates);
+        save();
+    }
+
+    /** Opens (creating it if needed) the history of a player, with a writer for new rounds. */
+    Profile open(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = createEntry(name);
+            save();
+        }
+        Files.createDirectories(shardPath(entry));
+        HistoryLog log = log(entry);
+        // Sealing waits for writers of other instances to finish their batch
+        log.rotate(ROTATE_BYTES);
+        if (log.needsCompaction()) compactor.execute(() -> compact(log));
+
+        // Only a grown history is read, and only its new part
+        long indexed = entry.rounds;
+        HistoryAggregates aggregates = aggregates(entry);
+        aggregates.load();
+        entry.copyFrom(aggregates);
+        if (entry.rounds != indexed) save();
+
+        // Recent statistics are not persisted; they are rebuilt from the tail of the history
+        RecentStats recent = new RecentStats(recentWindow, recentHalfLife);
+        recent.replay(log.readTail(recent.tailRounds()));
+        return new Profile(entry, aggregates, recent, log, new HistoryWriter(log, flushIntervalMs));
+    }
+
+    /** Writes the index to a temp file and atomically replaces the previous one. */
+    void save() throws IOException {
+        Files.createDirectories(root);
+        // A unique name, since another instance may be saving the index too
+        Path tmp = Files.createTempFile(root, indexPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(nextId);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name);
+                    out.writeInt(entry.shard);
+                    out.writeInt(entry.id);
+                    out.writeLong(entry.rounds);
+                    for (long count : entry.moveCounts) out.writeLong(count);
+                    for (long count : entry.resultCounts) out.writeLong(count);
+                }
+            }
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Entry createEntry(String name) {
+        // Checked before the entry exists: one the index cannot store would fail every save
+        if (name.length() > MAX_NAME_LENGTH) throw new IllegalArgumentException("Player name is too long: " + name.length());
+        int id = nextId++;
+        Entry entry = new Entry(name, id % SHARDS, id);
+        entries.put(name, entry);
+        return entry;
+    }
+
+    private static void compact(HistoryLog log) {
+        try {
+            log.compact();
+        } catch (IOException e) {
+            System.err.println("Помилка запису в файл: " + e.getMessage());
+        }
+    }
+
+    private Path shardPath(Entry entry) {
+        return root.resolve(String.format("%02x", entry.shard));
+    }
+
+    private HistoryLog log(Entry entry) {
+        return logs.computeIfAbsent(entry.id, id -> new HistoryLog(shardPath(entry), String.valueOf(id)));
+    }
+
+    private Path aggregatesPath(Entry entry) {
+        return shardPath(entry).resolve(entry.id + ".bin.agg");
+    }
+
+    private HistoryAggregates aggregates(Entry entry) {
+        return new HistoryAggregates(log(entry), aggregatesPath(entry), predictorOrder);
+    }
+
+    /** Index record of one player. */
+    private static final class Entry {
+        final String name;
+        final int shard;
+        final int id;
+        long rounds;
+        final long[] moveCounts = new long[Move.values().length];
+        final long[] resultCounts = new long[Result.values().length];
+
+        Entry(String name, int shard, int id) {
+            this.name = name;
+            this.shard = shard;
+            this.id = id;
+        }
+
+        void copyFrom(HistoryAggregates aggregates) {
+            rounds = aggregates.consumedRounds();
+            for (Move move : Move.values()) moveCounts[move.ordinal()] = aggregates.count(move);
+            for (Result result : Result.values()) resultCounts[result.ordinal()] = aggregates.count(result);
+        }
+    }
+
+    /** An open player: their aggregates, recent statistics and the writer appending their rounds. */
+    final class Profile {
+        private final Entry entry;
+        private final HistoryAggregates aggregates;
+        private final RecentStats recent;
+        private final HistoryLog log;
+        private final HistoryWriter writer;
+
+        private Profile(Entry entry, HistoryAggregates aggregates, RecentStats recent, HistoryLog log, HistoryWriter writer) {
+            this.entry = entry;
+            this.aggregates = aggregates;
+            this.recent = recent;
+            this.log = log;
+            this.writer = writer;
+        }
+
+        String name() {
+            return entry.name;
+        }
+
+        HistoryAggregates aggregates() {
+            return aggregates;
+        }
+
+        RecentStats recent() {
+            return recent;
+        }
+
+        void record(Move user, Move ai, Result result) {
+            writer.append(new byte[]{BinaryHistory.encode(user, ai, result)});
+            aggregates.record(user, result);
+            recent.record(user, ai, result);
+            entry.copyFrom(aggregates);
+        }
+
+        /** Picks up rounds appended to this player's history by other instances; usually there are none. */
+        void refresh() throws IOException {
+            // Queued rounds must reach the file first, otherwise it looks shorter than the aggregates
+            writer.flush();
+            if (aggregates.catchUp()) {
+                aggregates.save();
+                entry.copyFrom(aggregates);
+                recent.replay(log.readTail(recent.tailRounds()));
+            }
+        }
+
+        /** Writes pending rounds, then saves the aggregates and the index that cover them. */
+        void close() throws IOException {
+            writer.close();
+            aggregates.save();
+            entry.copyFrom(aggregates);
+            save();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Move and result statistics that favour recent rounds, in fixed memory.
+ * <p>
+ * The window view counts the last {@code window} rounds exactly: a ring
+ * buffer of round codes, where the code falling out of the window is
+ * subtracted as the new one is added. The decayed view multiplies every
+ * counter by a constant before adding the new round, so a round's weight
+ * halves every {@code halfLife} rounds. Both cost O(1) per round.
+ */
+final class RecentStats {
+    // Rounds whose decayed weight would be below this are not replayed when rebuilding
+    private static final double NEGLIGIBLE_WEIGHT = 1e-6;
+
+    private final byte[] ring;
+    private int head;
+    private int size;
+    private final long[] windowMoves = new long[Move.values().length];
+    private final long[] windowResults = new long[Result.values().length];
+
+    private final double halfLife;
+    private final double decay;
+    private final double[] decayedMoves = new double[Move.values().length];
+    private final double[] decayedResults = new double[Result.values().length];
+    private double decayedTotal;
+
+    RecentStats(int window, double halfLife) {
+        if (window < 1 || halfLife <= 0) throw new IllegalArgumentException("Window and half-life must be positive");
+        this.ring = new byte[window];
+        this.halfLife = halfLife;
+        this.decay = Math.pow(0.5, 1 / halfLife);
+    }
+
+    void record(Move user, Move ai, Result result) {
+        record(BinaryHistory.encode(user, ai, result));
+    }
+
+    private void record(byte code) {
+        int user = BinaryHistory.userOrdinal(code);
+        int result = BinaryHistory.resultOrdinal(code);
+
+        if (size == ring.length) {
+            byte oldest = ring[head];
+            windowMoves[BinaryHistory.userOrdinal(oldest)]--;
+            windowResults[BinaryHistory.resultOrdinal(oldest)]--;
+        } else {
+            size++;
+        }
+        ring[head] = code;
+        head = (head + 1) % ring.length;
+        windowMoves[user]++;
+        windowResults[result]++;
+
+        for (int i = 0; i < decayedMoves.length; i++) decayedMoves[i] *= decay;
+        for (int i = 0; i < decayedResults.length; i++) decayedResults[i] *= decay;
+        decayedTotal = decayedTotal * decay + 1;
+        decayedMoves[user]++;
+        decayedResults[result]++;
+    }
+
+    /** How many of the latest rounds {@link #replay} needs to rebuild both views. */
+    int tailRounds() {
+        long decayed = (long) Math.ceil(halfLife * Math.log(1 / NEGLIGIBLE_WEIGHT) / Math.log(2));
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(ring.length, decayed));
+    }
+
+    /** Rebuilds both views from the latest rounds of a history, given as codes in file order. */
+    void replay(ByteBuffer codes) {
+        clear();
+        for (int i = codes.position(); i < codes.limit(); i++) {
+            record(codes.get(i));
+        }
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+        Arrays.fill(windowMoves, 0);
+        Arrays.fill(windowResults, 0);
+        Arrays.fill(decayedMoves, 0);
+        Arrays.fill(decayedResults, 0);
+        decayedTotal = 0;
+    }
+
+    // ==========================================
+    // WINDOW VIEW
+    // ==========================================
+
+    int windowSize() {
+        return size;
+    }
+
+    long windowCount(Result result) {
+        return windowResults[result.ordinal()];
+    }
+
+    /** Most frequent player move within the window, or null if it is empty. */
+    Move windowedPrediction() {
+        if (size == 0) return null;
+        int best = 0;
+        for (int m = 1; m < windowMoves.length; m++) {
+            if (windowMoves[m] > windowMoves[best]) best = m;
+        }
+        return Move.values()[best];
+    }
+
+    // ==========================================
+    // DECAYED VIEW
+    // ==========================================
+
+    /** Share of a result with decayed weights, between 0 and 1. */
+    double decayedShare(Result result) {
+        return decayedTotal == 0 ? 0 : decayedResults[result.ordinal()] / decayedTotal;
+    }
+
+    /** Player move with the highest decayed weight, or null before the first round. */
+    Move decayedPrediction() {
+        if (decayedTotal == 0) return null;
+        int best = 0;
+        for (int m = 1; m < decayedMoves.length; m++) {
+            if (decayedMoves[m] > decayedMoves[best]) best = m;
+        }
+        return Move.values()[best];
+    }
+}
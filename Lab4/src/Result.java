@@ -0,0 +1,16 @@
+import java.awt.*;
+
+/**
+ * Outcome of a round from the player's point of view.
+ */
+enum Result {
+    WIN("Перемога!", new Color(40, 167, 69)), LOSE("Поразка!", new Color(220, 53, 69)), TIE("Нічия! Переграємо раунд.", new Color(232, 169, 81));
+
+    final String text;
+    final Color color;
+
+    Result(String text, Color color) {
+        this.text = text;
+        this.color = color;
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Game rules, independent of the UI: Well beats Scissors, Scissors beat Paper, Paper beats Well.
+ */
+final class RpsRules {
+    private RpsRules() {
+    }
+
+    /** Outcome of a round from the player's point of view. */
+    static Result resultOf(Move user, Move ai) {
+        if (user == ai) return Result.TIE;
+        return counter(ai) == user ? Result.WIN : Result.LOSE;
+    }
+
+    /** The move that beats {@code move}. */
+    static Move counter(Move move) {
+        return switch (move) {
+            case WELL -> Move.PAPER;
+            case SCISSORS -> Move.WELL;
+            case PAPER -> Move.SCISSORS;
+        };
+    }
+}
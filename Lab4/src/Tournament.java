@@ -0,0 +1,212 @@
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Headless tournament between the AI strategies and scripted player bots, no Swing involved.
+ * <p>
+ * Every pairing plays many independent sessions of a fixed number of rounds,
+ * spread over a fork-join pool. Each session gets its own SplittableRandom,
+ * split from the seed up front, so results do not depend on the thread count.
+ * Reported per pairing: AI win, tie and loss rates, a 95% confidence interval
+ * of the AI win rate across sessions, and rounds/s.
+ * <p>
+ * Usage:
+ * <pre>
+ * java Tournament [--strategies random,markov-0,markov-1,markov-2,markov-4,window-20,decay-10]
+ *                 [--bots constant,cycle,biased,random,beat-last,win-stay,anti-markov-2]
+ *                 [--sessions 2000] [--rounds 1000] [--threads N] [--seed 42]
+ * </pre>
+ */
+public class Tournament {
+
+    private static final double Z_95 = 1.959964;
+
+    public static void main(String[] args) {
+        String[] strategies = {"random", "markov-0", "markov-1", "markov-2", "markov-4", "window-20", "decay-10"};
+        String[] bots = {"constant", "cycle", "biased", "random", "beat-last", "win-stay", "anti-markov-2"};
+        int sessions = 2000;
+        int rounds = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--strategies" -> strategies = value.split(",");
+                case "--bots" -> bots = value.split(",");
+                case "--sessions" -> sessions = Integer.parseInt(value);
+                case "--rounds" -> rounds = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        // Fail on typos before any pairing runs
+        for (String strategy : strategies) createStrategy(strategy);
+        for (String bot : bots) createBot(bot);
+
+        System.out.printf("%-10s %-14s %9s %10s %7s %7s %14s%n",
+                "strategy", "bot", "ai-win%", "95%-ci", "tie%", "loss%", "rounds/s");
+
+        long totalRounds = 0;
+        long totalStart = System.nanoTime();
+        try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+            for (String strategy : strategies) {
+                for (String bot : bots) {
+                    runPairing(pool, strategy, bot, sessions, rounds, seed);
+                    totalRounds += (long) sessions * rounds;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - totalStart) / 1e9;
+        System.out.printf(Locale.ROOT, "%d rounds on %d threads in %.2f s (%.3e rounds/s)%n",
+                totalRounds, threads, seconds, totalRounds / seconds);
+    }
+
+    private static void runPairing(ForkJoinPool pool, String strategy, String bot, int sessions, int rounds, long seed) {
+        // Same seed for every pairing, so all strategies face the same random bot behaviour
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[sessions];
+        for (int i = 0; i < sessions; i++) randoms[i] = root.split();
+
+        long start = System.nanoTime();
+        long[][] outcomes = pool.submit(() -> IntStream.range(0, sessions).parallel()
+                .mapToObj(i -> playSession(createStrategy(strategy), createBot(bot), rounds, randoms[i]))
+                .toArray(long[][]::new)).join();
+        long elapsed = System.nanoTime() - start;
+
+        // Rounds within a session are correlated (strategies learn), so the interval is taken across sessions
+        double sum = 0;
+        double sumSquares = 0;
+        long[] totals = new long[Result.values().length];
+        for (long[] outcome : outcomes) {
+            double aiWinRate = (double) outcome[Result.LOSE.ordinal()] / rounds;
+            sum += aiWinRate;
+            sumSquares += aiWinRate * aiWinRate;
+            for (int r = 0; r < totals.length; r++) totals[r] += outcome[r];
+        }
+        double mean = sum / sessions;
+        double variance = sessions > 1 ? Math.max(0, (sumSquares - sessions * mean * mean) / (sessions - 1)) : 0;
+        double halfWidth = Z_95 * Math.sqrt(variance / sessions);
+        double played = (double) sessions * rounds;
+
+        System.out.printf(Locale.ROOT, "%-10s %-14s %9.2f %10s %7.2f %7.2f %14.3e%n",
+                strategy, bot, 100 * mean, String.format(Locale.ROOT, "+/-%.2f", 100 * halfWidth),
+                100 * totals[Result.TIE.ordinal()] / played, 100 * totals[Result.WIN.ordinal()] / played,
+                played / (elapsed / 1e9));
+    }
+
+    /** Plays one session and returns the counts of each result, from the player's point of view. */
+    private static long[] playSession(AiStrategy strategy, PlayerBot bot, int rounds, RandomGenerator random) {
+        long[] outcome = new long[Result.values().length];
+        for (int round = 0; round < rounds; round++) {
+            Move ai = strategy.chooseMove(random);
+            Move user = bot.nextMove(random);
+            outcome[RpsRules.resultOf(user, ai).ordinal()]++;
+            strategy.observe(user, ai);
+            bot.observe(user, ai);
+        }
+        return outcome;
+    }
+
+    // ==========================================
+    // STRATEGIES AND BOTS
+    // ==========================================
+
+    private static AiStrategy createStrategy(String name) {
+        if (name.equals("random")) return AiStrategy.random();
+        if (name.startsWith("markov-")) return AiStrategy.markov(parseOrder(name, "markov-"));
+        if (name.startsWith("window-")) return AiStrategy.windowed(Integer.parseInt(name.substring("window-".length())));
+        if (name.startsWith("decay-")) return AiStrategy.decayed(Double.parseDouble(name.substring("decay-".length())));
+        throw new IllegalArgumentException("Unknown strategy " + name);
+    }
+
+    /** A scripted player; same contract as {@link AiStrategy}, seen from the other side of the table. */
+    private interface PlayerBot {
+        Move nextMove(RandomGenerator random);
+
+        default void observe(Move user, Move ai) {
+        }
+    }
+
+    private static PlayerBot createBot(String name) {
+        Move[] moves = Move.values();
+        return switch (name) {
+            case "constant" -> _ -> Move.WELL;
+            case "random" -> random -> moves[random.nextInt(moves.length)];
+            // Plays Well half of the time, the other moves evenly otherwise
+            case "biased" -> random -> random.nextBoolean() ? Move.WELL : moves[1 + random.nextInt(moves.length - 1)];
+            case "cycle" -> new PlayerBot() {
+                private int next;
+
+                @Override
+                public Move nextMove(RandomGenerator random) {
+                    Move move = moves[next];
+                    next = (next + 1) % moves.length;
+                    return move;
+                }
+            };
+            // Plays whatever would have beaten the AI's previous move
+            case "beat-last" -> new PlayerBot() {
+                private Move lastAi;
+
+                @Override
+                public Move nextMove(RandomGenerator random) {
+                    return lastAi == null ? moves[random.nextInt(moves.length)] : RpsRules.counter(lastAi);
+                }
+
+                @Override
+                public void observe(Move user, Move ai) {
+                    lastAi = ai;
+                }
+            };
+            // Keeps a winning move, otherwise switches to the move that beats its own last one
+            case "win-stay" -> new PlayerBot() {
+                private Move next;
+
+                @Override
+                public Move nextMove(RandomGenerator random) {
+                    return next == null ? moves[random.nextInt(moves.length)] : next;
+                }
+
+                @Override
+                public void observe(Move user, Move ai) {
+                    next = RpsRules.resultOf(user, ai) == Result.WIN ? user : RpsRules.counter(user);
+                }
+            };
+            default -> {
+                if (name.startsWith("anti-markov-")) yield antiMarkov(parseOrder(name, "anti-markov-"));
+                throw new IllegalArgumentException("Unknown bot " + name);
+            }
+        };
+    }
+
+    /** Adversary that runs the AI's own order-k predictor on itself and beats the move the AI will counter with. */
+    private static PlayerBot antiMarkov(int order) {
+        MarkovPredictor model = new MarkovPredictor(order);
+        return new PlayerBot() {
+            @Override
+            public Move nextMove(RandomGenerator random) {
+                Move expected = model.predict();
+                if (expected == null) return Move.values()[random.nextInt(Move.values().length)];
+                return RpsRules.counter(RpsRules.counter(expected));
+            }
+
+            @Override
+            public void observe(Move user, Move ai) {
+                model.observe(user);
+            }
+        };
+    }
+
+    private static int parseOrder(String name, String prefix) {
+        int order = Integer.parseInt(name.substring(prefix.length()));
+        if (order < 0 || order > MarkovPredictor.MAX_ORDER) {
+            throw new IllegalArgumentException("Order must be between 0 and " + MarkovPredictor.MAX_ORDER + ": " + name);
+        }
+        return order;
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.StringJoiner;
+import java.util.random.RandomGenerator;
+
+/**
+ * State of one coin game: the rules, the piles and whose turn it is.
+ * Used by the Swing view and by every session of the game server; not
+ * thread-safe, each game belongs to one thread at a time.
+ */
+final class CoinGame {
+    private final SubtractionGame rules;
+    private final boolean misere;
+    private final long[] piles;
+    private Turn currentTurn;
+
+    CoinGame(SubtractionGame rules, boolean misere, long[] piles, Turn first) {
+        for (long pile : piles) {
+            if (pile < 0) throw new IllegalArgumentException("Negative pile: " + pile);
+        }
+        this.rules = rules;
+        this.misere = misere;
+        this.piles = piles.clone();
+        this.currentTurn = first;
+    }
+
+    SubtractionGame rules() {
+        return rules;
+    }
+
+    int pileCount() {
+        return piles.length;
+    }
+
+    long pile(int index) {
+        return piles[index];
+    }
+
+    long totalCoins() {
+        long total = 0;
+        for (long pile : piles) total += pile;
+        return total;
+    }
+
+    Turn currentTurn() {
+        return currentTurn;
+    }
+
+    boolean isOver() {
+        return !rules.canMove(piles);
+    }
+
+    /** The winner of a finished game: the last move wins, or loses in misère play. */
+    Turn winner() {
+        if (!isOver()) throw new IllegalStateException("Game is not over");
+        // currentTurn is the player who cannot move, so the other one moved last
+        Turn lastMover = currentTurn.other();
+        return misere ? lastMover.other() : lastMover;
+    }
+
+    /** Applies a move of the player whose turn it is and passes the turn. */
+    void take(Turn who, int pile, int coins) {
+        if (who != currentTurn || isOver()) throw new IllegalStateException("Not your turn");
+        if (pile < 0 || pile >= piles.length) throw new IllegalArgumentException("No pile " + (pile + 1));
+        if (!isAllowed(coins) || coins > piles[pile]) throw new IllegalArgumentException("Cannot take " + coins);
+        piles[pile] -= coins;
+        currentTurn = currentTurn.other();
+    }
+
+    private boolean isAllowed(int coins) {
+        for (int move : rules.moves()) {
+            if (move == coins) return true;
+        }
+        return false;
+    }
+
+    /**
+     * AI OPTIMAL STRATEGY LOGIC
+     * Sprague-Grundy theory (see SubtractionGame):
+     * Every pile has a Grundy value; under normal play the position is lost for the
+     * player to move exactly when the XOR of these values is 0. For the move set {1, 2}
+     * the value of a pile is coinsLeft % 3, which gives the classic "leave a multiple of 3".
+     * The AI always moves to a lost position when one exists.
+     */
+    SubtractionGame.Move chooseAiMove(RandomGenerator random) {
+        if (isOver()) throw new IllegalStateException("Game is over");
+        SubtractionGame.Move winning = rules.winningMove(piles, misere);
+        if (winning != null) return winning;
+
+        // Losing position: AI cannot force a win if user plays perfectly.
+        // Make a random legal move, hoping the user makes a mistake.
+        int[] moves = rules.moves();
+        while (true) {
+            int pile = random.nextInt(piles.length);
+            int amount = moves[random.nextInt(moves.length)];
+            if (amount <= piles[pile]) return new SubtractionGame.Move(pile, amount);
+        }
+    }
+
+    String pilesText(String delimiter) {
+        StringJoiner text = new StringJoiner(delimiter);
+        for (long pile : piles) text.add(String.valueOf(pile));
+        return text.toString();
+    }
+
+    enum Turn {
+        USER, AI;
+
+        Turn other() {
+            return this == USER ? AI : USER;
+        }
+    }
+}
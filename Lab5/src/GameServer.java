@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Headless coin-game server for bot ladders: many games at once over a line protocol on localhost.
+ * <p>
+ * Each connection gets a virtual thread and may carry any number of games,
+ * told apart by a client-chosen id, so that a handful of sockets can hold
+ * a hundred thousand games. The player always moves first; AI replies are
+ * delayed by the think time on one scheduler shared by all games, which
+ * hands them to a writer of their own connection, so a client that stops
+ * reading only holds up its own replies.
+ * <p>
+ * Games with the same move set share one solver. At most
+ * {@code coins.server.ruleSets} move sets are kept, least recently used
+ * first out, and as many new table files are written per run; rule sets
+ * beyond that are solved in memory only.
+ * <pre>
+ * NEW &lt;id&gt; &lt;moves&gt; &lt;piles&gt; [MISERE]   e.g. NEW g1 1,3,4 12,20     -> OK &lt;id&gt; &lt;piles&gt;
+ * TAKE &lt;id&gt; &lt;pile&gt; &lt;coins&gt;             piles are numbered from 1  -> AI &lt;id&gt; &lt;pile&gt; &lt;coins&gt; &lt;piles&gt; [WIN|LOSE]
+ *                                       or, if the player's move ended the game -> END &lt;id&gt; WIN|LOSE
+ * QUIT
+ * </pre>
+ * Errors are answered with {@code ERR <id> <message>}. A finished game is forgotten.
+ * <p>
+ * Usage: {@code java GameServer [--port 5555] [--think-ms 0]}
+ */
+public class GameServer {
+
+    private static final int BACKLOG = 4096;
+    private static final int REPORT_INTERVAL_S = 5;
+    private static final int MAX_RULE_SETS = Integer.getInteger("coins.server.ruleSets", 64);
+
+    private final long thinkMs;
+    private final StrategyTables tables = new StrategyTables(Path.of("strategy_tables"));
+    // Solvers by normalised move set, in access order; not synchronized, a virtual thread must not pin its carrier
+    private final Map<String, SubtractionGame> rules = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SubtractionGame> eldest) {
+            return size() > MAX_RULE_SETS;
+        }
+    };
+    private final ReentrantLock rulesLock = new ReentrantLock();
+    private final AtomicInteger savedTables = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "ai-think");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger games = new AtomicInteger();
+    private final LongAdder moves = new LongAdder();
+
+    GameServer(long thinkMs) {
+        this.thinkMs = thinkMs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 5555;
+        long thinkMs = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--think-ms" -> thinkMs = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        new GameServer(thinkMs).serve(port);
+    }
+
+    void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+             ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.printf("Listening on %s, think time %d ms%n", server.getLocalSocketAddress(), thinkMs);
+            long[] lastMoves = {0};
+            scheduler.scheduleAtFixedRate(() -> {
+                long total = moves.sum();
+                System.out.printf(Locale.ROOT, "connections %d, games %d, %.0f moves/s%n",
+                        connections.get(), games.get(), (double) (total - lastMoves[0]) / REPORT_INTERVAL_S);
+                lastMoves[0] = total;
+            }, REPORT_INTERVAL_S, REPORT_INTERVAL_S, TimeUnit.SECONDS);
+
+            while (true) {
+                Socket socket = server.accept();
+                handlers.execute(() -> handle(socket));
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        connections.incrementAndGet();
+        Map<String, CoinGame> open = new HashMap<>();
+        // Delayed replies are written in order by the connection's own thread, never by the scheduler
+        ExecutorService replies = thinkMs > 0 ? Executors.newSingleThreadExecutor(Thread.ofVirtual().name("replies").factory()) : null;
+        try (LineSocket lines = new LineSocket(socket)) {
+            String request;
+            while ((request = lines.readLine()) != null) {
+                String[] words = request.strip().split(" +");
+                if (words[0].equals("QUIT")) break;
+                String id = words.length > 1 ? words[1] : "-";
+                String reply;
+                try {
+                    reply = switch (words[0]) {
+                        case "NEW" -> newGame(words, open);
+                        case "TAKE" -> take(words, open, lines, replies);
+                        default -> "ERR " + id + " unknown command";
+                    };
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    reply = "ERR " + id + " " + e.getMessage();
+                }
+                if (reply != null) lines.writeLine(reply);
+            }
+        } catch (IOException ignored) {
+            // The client went away; its games go with it
+        } finally {
+            if (replies != null) replies.shutdownNow();
+            games.addAndGet(-open.size());
+            connections.decrementAndGet();
+        }
+    }
+
+    private String newGame(String[] words, Map<String, CoinGame> open) {
+        if (words.length < 4 || words.length > 5) throw new IllegalArgumentException("usage: NEW <id> <moves> <piles> [MISERE]");
+        if (open.containsKey(words[1])) throw new IllegalStateException("game exists");
+        boolean misere = words.length == 5 && words[4].equals("MISERE");
+        String[] pileWords = words[3].split(",");
+        long[] piles = new long[pileWords.length];
+        for (int i = 0; i < piles.length; i++) piles[i] = Long.parseLong(pileWords[i]);
+
+        CoinGame game = new CoinGame(rules(words[2]), misere, piles, CoinGame.Turn.USER);
+        open.put(words[1], game);
+        games.incrementAndGet();
+        return "OK " + words[1] + " " + game.pilesText(",");
+    }
+
+    /** Plays the player's move and the AI's answer; returns null when the answer is sent later. */
+    private String take(String[] words, Map<String, CoinGame> open, LineSocket lines, ExecutorService replies) {
+        if (words.length != 4) throw new IllegalArgumentException("usage: TAKE <id> <pile> <coins>");
+        String id = words[1];
+        CoinGame game = open.get(id);
+        if (game == null) throw new IllegalStateException("no such game");
+
+        game.take(CoinGame.Turn.USER, Integer.parseInt(words[2]) - 1, Integer.parseInt(words[3]));
+        moves.increment();
+        if (game.isOver()) return "END " + id + " " + finish(id, game, open);
+
+        SubtractionGame.Move move = game.chooseAiMove(ThreadLocalRandom.current());
+        game.take(CoinGame.Turn.AI, move.pile(), move.coins());
+        moves.increment();
+        String reply = "AI " + id + " " + (move.pile() + 1) + " " + move.coins() + " " + game.pilesText(",");
+        if (game.isOver()) reply += " " + finish(id, game, open);
+        if (thinkMs <= 0) return reply;
+
+        String delayed = reply;
+        scheduler.schedule(() -> {
+            try {
+                replies.execute(() -> {
+                    try {
+                        lines.writeLine(delayed);
+                    } catch (IOException ignored) {
+                        // Closed in the meantime
+                    }
+                });
+            } catch (RejectedExecutionException ignored) {
+                // The connection is gone
+            }
+        }, thinkMs, TimeUnit.MILLISECONDS);
+        return null;
+    }
+
+    private String finish(String id, CoinGame game, Map<String, CoinGame> open) {
+        open.remove(id);
+        games.decrementAndGet();
+        return game.winner() == CoinGame.Turn.USER ? "WIN" : "LOSE";
+    }
+
+    /** The shared solver for a move set; "4,1,3" and "1,3,4,4" are the same rule set. */
+    private SubtractionGame rules(String text) {
+        int[] moves = Arrays.stream(SubtractionGame.parseMoves(text)).sorted().distinct().toArray();
+        String key = Arrays.toString(moves);
+        rulesLock.lock();
+        try {
+            SubtractionGame cached = rules.get(key);
+            if (cached != null) return cached;
+        } finally {
+            rulesLock.unlock();
+        }
+
+        // Solved outside the lock; two connections racing on a new rule set both solve it once
+        SubtractionGame loaded = load(moves);
+        rulesLock.lock();
+        try {
+            SubtractionGame raced = rules.putIfAbsent(key, loaded);
+            return raced != null ? raced : loaded;
+        } finally {
+            rulesLock.unlock();
+        }
+    }
+
+    private SubtractionGame load(int[] moves) {
+        try {
+            SubtractionGame saved = tables.find(moves);
+            if (saved != null) return saved;
+        } catch (IOException e) {
+            System.err.println("Strategy tables unavailable: " + e.getMessage());
+        }
+        SubtractionGame solved = new SubtractionGame(moves);
+        // Clients may invent any number of move sets; only so many become files
+        if (savedTables.incrementAndGet() <= MAX_RULE_SETS) {
+            try {
+                tables.save(solved);
+            } catch (IOException e) {
+                System.err.println("Strategy tables unavailable: " + e.getMessage());
+            }
+        }
+        return solved;
+    }
+}
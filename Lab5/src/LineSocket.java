@@ -0,0 +1,69 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ASCII lines over a socket with a few hundred bytes of buffering, so that
+ * a hundred thousand of them fit in memory. Reading belongs to one thread;
+ * writing may come from any thread.
+ */
+final class LineSocket implements Closeable {
+    private static final int MAX_LINE = 256;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final byte[] buffer = new byte[512];
+    private final byte[] line = new byte[MAX_LINE];
+    private int position;
+    private int limit;
+    // Not synchronized: a blocked write would pin a virtual thread's carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    LineSocket(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = socket.getInputStream();
+        this.out = socket.getOutputStream();
+    }
+
+    /** Next line without its terminator, or null at the end of the stream. */
+    String readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (position == limit) {
+                int read = in.read(buffer);
+                if (read < 0) return length > 0 ? text(length) : null;
+                position = 0;
+                limit = read;
+            }
+            byte b = buffer[position++];
+            if (b == '\n') return text(length);
+            if (length == MAX_LINE) throw new IOException("Line longer than " + MAX_LINE + " bytes");
+            line[length++] = b;
+        }
+    }
+
+    private String text(int length) {
+        if (length > 0 && line[length - 1] == '\r') length--;
+        return new String(line, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    void writeLine(String text) throws IOException {
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.US_ASCII);
+        writeLock.lock();
+        try {
+            out.write(bytes);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for {@link GameServer}: opens every game first, so they are all live at
+ * once, then plays them to the end with random legal moves and reports move latencies.
+ * <p>
+ * Games are spread over the connections, one virtual thread each. Every game
+ * has one move in flight; its latency runs from sending TAKE to reading the
+ * answer, think time included.
+ * <p>
+ * Usage:
+ * <pre>
+ * java LoadGenerator [--port 5555] [--games 100000] [--connections 1000] [--moves 1,2] [--piles 2] [--misere] [--seed 42]
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final int READ_TIMEOUT_MS = 60_000;
+
+    public static void main(String[] args) throws Exception {
+        int port = 5555;
+        int games = 100_000;
+        int connections = 1000;
+        String moves = "1,2";
+        int piles = 2;
+        boolean misere = false;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--connections" -> connections = Integer.parseInt(args[++i]);
+                case "--moves" -> moves = args[++i];
+                case "--piles" -> piles = Integer.parseInt(args[++i]);
+                case "--misere" -> misere = true;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        connections = Math.min(connections, games);
+
+        SplittableRandom root = new SplittableRandom(seed);
+        CountDownLatch allOpen = new CountDownLatch(connections);
+        List<Future<Client>> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                // Games spread as evenly as possible
+                int count = games / connections + (c < games % connections ? 1 : 0);
+                Client client = new Client(c, count, piles, port, moves, misere, root.split());
+                clients.add(executor.submit(() -> client.run(allOpen)));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[][] perClient = new long[clients.size()][0];
+        long errors = 0;
+        long failedConnections = 0;
+        long wins = 0;
+        long losses = 0;
+        for (int c = 0; c < clients.size(); c++) {
+            Client client;
+            try {
+                client = clients.get(c).get();
+            } catch (ExecutionException e) {
+                if (failedConnections++ == 0) System.err.println("Connection failed: " + e.getCause());
+                continue;
+            }
+            perClient[c] = Arrays.copyOf(client.latencies, client.count);
+            errors += client.errors;
+            wins += client.wins;
+            losses += client.losses;
+        }
+        long[] latencies = Arrays.stream(perClient).flatMapToLong(Arrays::stream).sorted().toArray();
+
+        System.out.printf(Locale.ROOT, "%d games open at once on %d connections; player won %d, lost %d, errors %d, failed connections %d%n",
+                games, connections, wins, losses, errors, failedConnections);
+        System.out.printf(Locale.ROOT, "%d moves in %.2f s (%.0f moves/s)%n", latencies.length, seconds, latencies.length / seconds);
+        if (latencies.length > 0) {
+            System.out.printf(Locale.ROOT, "latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    /** Nearest-rank percentile of sorted nanosecond values, in milliseconds. */
+    private static double percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    /** One connection and the games it carries. */
+    private static final class Client {
+        private final int index;
+        private final int[] moves;
+        private final String movesText;
+        private final boolean misere;
+        private final int port;
+        private final SplittableRandom random;
+        private final long[][] piles;
+        private final boolean[] live;
+        private final long[] sentAt;
+
+        long[] latencies = new long[64];
+        int count;
+        long errors;
+        long wins;
+        long losses;
+
+        Client(int index, int games, int pileCount, int port, String moves, boolean misere, SplittableRandom random) {
+            this.index = index;
+            this.moves = Arrays.stream(SubtractionGame.parseMoves(moves)).sorted().toArray();
+            this.movesText = moves;
+            this.misere = misere;
+            this.port = port;
+            this.random = random;
+            this.piles = new long[games][pileCount];
+            this.live = new boolean[games];
+            this.sentAt = new long[games];
+        }
+
+        Client run(CountDownLatch allOpen) throws IOException, InterruptedException {
+            boolean counted = false;
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                 LineSocket lines = new LineSocket(socket)) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                Map<String, Integer> ids = new HashMap<>();
+
+                // Open every game, then wait until all connections have theirs open too
+                for (int g = 0; g < piles.length; g++) {
+                    String id = index + "." + g;
+                    ids.put(id, g);
+                    StringBuilder request = new StringBuilder("NEW ").append(id).append(' ').append(movesText).append(' ');
+                    for (int p = 0; p < piles[g].length; p++) {
+                        piles[g][p] = moves[0] + 14 + random.nextInt(16);
+                        request.append(p > 0 ? "," : "").append(piles[g][p]);
+                    }
+                    lines.writeLine(request + (misere ? " MISERE" : ""));
+                }
+                int open = 0;
+                for (int g = 0; g < piles.length; g++) {
+                    live[g] = lines.readLine().startsWith("OK ");
+                    if (live[g]) open++;
+                    else errors++;
+                }
+                counted = true;
+                allOpen.countDown();
+                allOpen.await();
+
+                for (int g = 0; g < piles.length; g++) {
+                    if (live[g]) sendMove(lines, g);
+                }
+                while (open > 0) {
+                    String line = lines.readLine();
+                    if (line == null) throw new IOException("Server closed the connection");
+                    String[] words = line.split(" ");
+                    Integer g = words.length > 1 ? ids.get(words[1]) : null;
+                    if (g == null || !live[g] || words[0].equals("ERR")) {
+                        errors++;
+                        if (g != null && live[g]) {
+                            live[g] = false;
+                            open--;
+                        }
+                        continue;
+                    }
+                    record(System.nanoTime() - sentAt[g]);
+                    String result = switch (words[0]) {
+                        case "END" -> words[2];
+                        case "AI" -> {
+                            String[] left = words[4].split(",");
+                            for (int p = 0; p < left.length; p++) piles[g][p] = Long.parseLong(left[p]);
+                            yield words.length > 5 ? words[5] : null;
+                        }
+                        default -> throw new IOException("Unexpected reply: " + String.join(" ", words));
+                    };
+                    if (result == null) {
+                        sendMove(lines, g);
+                        continue;
+                    }
+                    if (result.equals("WIN")) wins++;
+                    else losses++;
+                    live[g] = false;
+                    open--;
+                }
+                lines.writeLine("QUIT");
+            } finally {
+                // A client that failed early must not keep the others waiting
+                if (!counted) allOpen.countDown();
+            }
+            return this;
+        }
+
+        /** Sends a random legal move for game g, updating the local copy of its piles. */
+        private void sendMove(LineSocket lines, int g) throws IOException {
+            long[] position = piles[g];
+            int pile;
+            do {
+                pile = random.nextInt(position.length);
+            } while (position[pile] < moves[0]);
+            int options = 0;
+            while (options < moves.length && moves[options] <= position[pile]) options++;
+            int take = moves[random.nextInt(options)];
+            position[pile] -= take;
+            sentAt[g] = System.nanoTime();
+            lines.writeLine("TAKE " + index + "." + g + " " + (pile + 1) + " " + take);
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, 2 * count);
+            latencies[count++] = nanos;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class Main extends JFrame {
 
@@ -19,17 +23,26 @@ public class Main extends JFrame {
     private final JLabel turnLabel;
     private final JLabel coinsDisplayLabel;
     private final JLabel logLabel;
-    private final JButton take1Btn;
-    private final JButton take2Btn;
+    private final JComboBox<String> pileCombo;
+    private final JPanel moveButtonsPanel;
     private final JButton returnBtn;
+    // Menu View Components
+    private JTextField movesField;
+    private JSpinner pilesSpinner;
+    private JCheckBox misereCheck;
+    // Solver tables are computed once per move set and memory-mapped afterwards
+    private final StrategyTables strategyTables = new StrategyTables(Path.of("strategy_tables"));
+    // One timer for every AI turn: 0.5 second delay.
+    // Makes the AI feel more "human" and lets the user read what happened.
+    private final Timer aiTimer = new Timer(500, _ -> aiMove());
+    private final RandomGenerator random = new Random();
     // --- Game State Variables ---
-    private int coinsLeft;
-    private Turn currentTurn;
+    private CoinGame game;
     public Main() {
         // --- Window Setup ---
         setTitle("Гра в монети");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(500, 450);
+        setSize(500, 520);
         setLocationRelativeTo(null);
         setResizable(false);
 
@@ -41,9 +54,10 @@ public class Main extends JFrame {
         coinsDisplayLabel = new JLabel("0", SwingConstants.CENTER);
         logLabel = new JLabel("Починаємо гру!", SwingConstants.CENTER);
 
-        take1Btn = new JButton("Взяти 1 монету");
-        take2Btn = new JButton("Взяти 2 монети");
+        pileCombo = new JComboBox<>();
+        moveButtonsPanel = new JPanel(new GridLayout(1, 0, 15, 0));
         returnBtn = new JButton("Повернутись до меню");
+        aiTimer.setRepeats(false);
 
         // --- Create Views ---
         cardPanel.add(createMenuView(), "MENU");
@@ -65,15 +79,39 @@ public class Main extends JFrame {
         gbc.gridy = 0;
         panel.add(title, gbc);
 
-        JLabel rules = new JLabel("<html><div style='text-align: center;'>" + "Правила:<br>За один хід можна взяти 1 або 2 монети.<br>" + "Виграє той, хто забере <b>останню</b> монету.</div></html>", SwingConstants.CENTER);
+        JLabel rules = new JLabel("<html><div style='text-align: center;'>" + "Правила:<br>За один хід можна взяти з однієї купки<br>стільки монет, скільки дозволяє набір ходів.<br>" + "Виграє той, хто зробить <b>останній</b> хід<br>(у грі навпаки — програє).</div></html>", SwingConstants.CENTER);
         rules.setFont(mainFont);
         gbc.gridy = 1;
         panel.add(rules, gbc);
 
+        // Game settings
+        JPanel settingsPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+
+        JLabel movesLabel = new JLabel("Набір ходів:");
+        movesLabel.setFont(mainFont);
+        movesField = new JTextField("1, 2");
+        movesField.setFont(mainFont);
+        settingsPanel.add(movesLabel);
+        settingsPanel.add(movesField);
+
+        JLabel pilesLabel = new JLabel("Кількість купок:");
+        pilesLabel.setFont(mainFont);
+        pilesSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 4, 1));
+        pilesSpinner.setFont(mainFont);
+        settingsPanel.add(pilesLabel);
+        settingsPanel.add(pilesSpinner);
+
+        misereCheck = new JCheckBox("Гра навпаки");
+        misereCheck.setFont(mainFont);
+        settingsPanel.add(misereCheck);
+
+        gbc.gridy = 2;
+        panel.add(settingsPanel, gbc);
+
         JButton startBtn = new JButton("Почати нову гру");
         styleButton(startBtn, colorBtnNormal);
         startBtn.addActionListener(_ -> startGame());
-        gbc.gridy = 2;
+        gbc.gridy = 3;
         panel.add(startBtn, gbc);
 
         return panel;
@@ -104,23 +142,18 @@ public class Main extends JFrame {
         centerPanel.add(logLabel);
         panel.add(centerPanel, BorderLayout.CENTER);
 
-        // Footer (Action Buttons)
-        JPanel footerPanel = new JPanel(new GridLayout(2, 1, 10, 10));
-
-        JPanel buttonsPanel = new JPanel(new GridLayout(1, 2, 15, 0));
-        styleButton(take1Btn, colorBtnTake);
-        styleButton(take2Btn, colorBtnTake);
-        take1Btn.addActionListener(_ -> userMove(1));
-        take2Btn.addActionListener(_ -> userMove(2));
+        // Footer (Pile choice and Action Buttons, one per allowed move)
+        JPanel footerPanel = new JPanel(new GridLayout(3, 1, 10, 10));
 
-        buttonsPanel.add(take1Btn);
-        buttonsPanel.add(take2Btn);
+        pileCombo.setFont(mainFont);
+        pileCombo.addActionListener(_ -> updateUIState());
 
         styleButton(returnBtn, colorBtnNormal);
         returnBtn.setVisible(false);
         returnBtn.addActionListener(_ -> cardLayout.show(cardPanel, "MENU"));
 
-        footerPanel.add(buttonsPanel);
+        footerPanel.add(pileCombo);
+        footerPanel.add(moveButtonsPanel);
         footerPanel.add(returnBtn);
 
         panel.add(footerPanel, BorderLayout.SOUTH);
@@ -129,22 +162,39 @@ public class Main extends JFrame {
     }
 
     private void startGame() {
-        // 1. Random initial coins (e.g., between 15 and 30)
-        coinsLeft = (int) (Math.random() * 16) + 15;
+        // 0. Rules from the menu
+        SubtractionGame rules;
+        try {
+            rules = loadRules(SubtractionGame.parseMoves(movesField.getText()));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Набір ходів має містити від 1 до " + SubtractionGame.MAX_MOVES
+                    + " чисел від 1 до " + SubtractionGame.MAX_MOVE + ", наприклад: 1, 3, 4", "Помилка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // 1. Random initial coins in every pile (between 15 and 30 when the smallest move is 1)
+        long[] piles = new long[(Integer) pilesSpinner.getValue()];
+        int smallestMove = rules.moves()[0];
+        for (int i = 0; i < piles.length; i++) piles[i] = random.nextInt(16) + 14 + smallestMove;
 
         // 2. Random first turn (0 = User, 1 = AI)
-        currentTurn = (Math.random() < 0.5) ? Turn.USER : Turn.AI;
+        CoinGame.Turn first = random.nextBoolean() ? CoinGame.Turn.USER : CoinGame.Turn.AI;
+        game = new CoinGame(rules, misereCheck.isSelected(), piles, first);
+
+        createMoveButtons();
+        pileCombo.removeAllItems();
+        for (int i = 1; i <= piles.length; i++) pileCombo.addItem("Купка " + i);
+        pileCombo.setVisible(piles.length > 1);
 
-        logLabel.setText("Починаємо! Монет на столі: " + coinsLeft);
+        logLabel.setText("Починаємо! Монет на столі: " + game.totalCoins());
         returnBtn.setVisible(false);
-        take1Btn.setVisible(true);
-        take2Btn.setVisible(true);
+        moveButtonsPanel.setVisible(true);
 
         updateUIState();
         cardLayout.show(cardPanel, "GAME");
 
-        if (currentTurn == Turn.AI) {
-            triggerAiTurn();
+        if (game.currentTurn() == CoinGame.Turn.AI) {
+            aiTimer.restart();
         }
     }
 
@@ -153,67 +203,44 @@ public class Main extends JFrame {
     // ==========================================
 
     private void userMove(int amount) {
-        if (amount > coinsLeft) return; // Safeguard
+        int pile = Math.max(0, pileCombo.getSelectedIndex());
+        if (game.currentTurn() != CoinGame.Turn.USER || amount > game.pile(pile)) return; // Safeguard
 
-        coinsLeft -= amount;
-        logLabel.setText("Ви взяли " + amount + " " + getCoinWord(amount));
+        game.take(CoinGame.Turn.USER, pile, amount);
+        logLabel.setText("Ви взяли " + amount + " " + getCoinWord(amount) + pileSuffix(pile));
 
-        if (checkGameOver(Turn.USER)) return;
+        if (checkGameOver()) return;
 
-        currentTurn = Turn.AI;
         updateUIState();
-        triggerAiTurn();
+        aiTimer.restart();
     }
 
-    private void triggerAiTurn() {
-        // 0.5 second delay.
-        // Makes the AI feel more "human" and lets the user read what happened.
-        Timer timer = new Timer(500, _ -> {
-            int takeAmount = calculateAiOptimalMove();
-            coinsLeft -= takeAmount;
+    private void aiMove() {
+        SubtractionGame.Move move = game.chooseAiMove(random);
+        game.take(CoinGame.Turn.AI, move.pile(), move.coins());
 
-            logLabel.setText("Комп'ютер взяв " + takeAmount + " " + getCoinWord(takeAmount));
+        logLabel.setText("Комп'ютер взяв " + move.coins() + " " + getCoinWord(move.coins()) + pileSuffix(move.pile()));
 
-            if (checkGameOver(Turn.AI)) return;
+        if (checkGameOver()) return;
 
-            currentTurn = Turn.USER;
-            updateUIState();
-        });
-        timer.setRepeats(false);
-        timer.start();
+        updateUIState();
     }
 
-    /**
-     * AI OPTIMAL STRATEGY LOGIC
-     * Mathematical proof:
-     * Target: Take the last coin (leave 0).
-     * If you leave a multiple of 3 (0, 3, 6, 9...), whatever the opponent takes (1 or 2),
-     * they will leave a non-multiple of 3. You can then restore it to a multiple of 3.
-     */
-    private int calculateAiOptimalMove() {
-        int remainder = coinsLeft % 3;
-
-        if (remainder == 1) {
-            // Winning move: take 1 to leave a multiple of 3
-            return 1;
-        } else if (remainder == 2) {
-            // Winning move: take 2 to leave a multiple of 3
-            return 2;
-        } else {
-            // Losing position (coinsLeft % 3 == 0).
-            // AI cannot force a win if user plays perfectly.
-            // Take 1 or 2 randomly, or just 1 to delay the game, hoping user makes a mistake.
-            // But we must be careful not to take 2 if only 1 coin is left (though 1 % 3 = 1, handled above).
-            return (Math.random() < 0.5 && coinsLeft >= 2) ? 2 : 1;
+    /** Solver for the move set, from the saved tables when this rule set was played before. */
+    private SubtractionGame loadRules(int[] moves) {
+        try {
+            return strategyTables.load(moves);
+        } catch (IOException e) {
+            System.err.println("Помилка читання файлу: " + e.getMessage());
+            return new SubtractionGame(moves);
         }
     }
 
-    private boolean checkGameOver(Turn winner) {
-        if (coinsLeft <= 0) {
-            coinsLeft = 0;
+    private boolean checkGameOver() {
+        if (game.isOver()) {
             updateUIState();
 
-            if (winner == Turn.USER) {
+            if (game.winner() == CoinGame.Turn.USER) {
                 turnLabel.setText("ВИ ПЕРЕМОГЛИ!");
                 turnLabel.setForeground(colorBtnTake);
             } else {
@@ -221,8 +248,8 @@ public class Main extends JFrame {
                 turnLabel.setForeground(colorBtnDanger);
             }
 
-            take1Btn.setVisible(false);
-            take2Btn.setVisible(false);
+            moveButtonsPanel.setVisible(false);
+            pileCombo.setVisible(false);
             returnBtn.setVisible(true);
             return true;
         }
@@ -230,25 +257,51 @@ public class Main extends JFrame {
     }
 
     private void updateUIState() {
-        coinsDisplayLabel.setText(String.valueOf(coinsLeft));
+        if (game == null) return;
+        coinsDisplayLabel.setText(game.pilesText("   "));
+        coinsDisplayLabel.setFont(game.pileCount() == 1 ? coinFont : coinFont.deriveFont(40f));
 
-        if (coinsLeft > 0) {
-            if (currentTurn == Turn.USER) {
+        if (!game.isOver()) {
+            boolean userTurn = game.currentTurn() == CoinGame.Turn.USER;
+            if (userTurn) {
                 turnLabel.setText("Ваш хід");
                 turnLabel.setForeground(colorBtnNormal);
-                take1Btn.setEnabled(true);
-                take2Btn.setEnabled(coinsLeft >= 2); // Disable take 2 if only 1 coin left
             } else {
                 turnLabel.setText("Комп'ютер думає...");
                 turnLabel.setForeground(colorBtnDanger);
-                take1Btn.setEnabled(false);
-                take2Btn.setEnabled(false);
             }
+            // Disable moves larger than the chosen pile
+            long pile = game.pile(Math.max(0, pileCombo.getSelectedIndex()));
+            int[] moves = game.rules().moves();
+            for (int i = 0; i < moves.length; i++) {
+                moveButtonsPanel.getComponent(i).setEnabled(userTurn && moves[i] <= pile);
+            }
+        }
+    }
+
+    /** One button per allowed move, rebuilt for every game. */
+    private void createMoveButtons() {
+        moveButtonsPanel.removeAll();
+        for (int amount : game.rules().moves()) {
+            JButton btn = new JButton("Взяти " + amount);
+            styleButton(btn, colorBtnTake);
+            btn.addActionListener(_ -> userMove(amount));
+            moveButtonsPanel.add(btn);
         }
+        moveButtonsPanel.revalidate();
+        moveButtonsPanel.repaint();
+    }
+
+    private String pileSuffix(int pile) {
+        return game.pileCount() > 1 ? " з купки " + (pile + 1) : "";
     }
 
     private String getCoinWord(int amount) {
-        return amount == 1 ? "монету" : "монети";
+        int lastTwo = amount % 100;
+        int last = amount % 10;
+        if (last == 1 && lastTwo != 11) return "монету";
+        if (last >= 2 && last <= 4 && (lastTwo < 12 || lastTwo > 14)) return "монети";
+        return "монет";
     }
 
     // ==========================================
@@ -279,7 +332,4 @@ public class Main extends JFrame {
             new Main().setVisible(true);
         });
     }
-
-    // --- Enums ---
-    enum Turn {USER, AI}
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Headless verification and benchmark of the coin-game AI, no Swing involved.
+ * <p>
+ * Verification: an independent brute-force win/loss table over every position
+ * up to {@code --verify-to} coins per pile is compared with the solver, and from
+ * every winning position the AI's move must lead to a losing one. By induction
+ * the AI then wins every winnable game, whoever moves first. The bound is
+ * lowered to fit memory for several piles, and to the solver's exact table
+ * for misère play over several piles.
+ * <p>
+ * Self-play: every start position in the {@code startGame} range, with either
+ * side first, is played by the AI against a random bot and against itself,
+ * in parallel streams. Reported per pairing: AI win rate, whether every
+ * winnable start was won, and games/s. Exits with status 1 on any failure.
+ * <p>
+ * Usage:
+ * <pre>
+ * java SelfPlay [--moves "1,2;1,3,4;2,5,7"] [--piles 1] [--from 15] [--to 30]
+ *               [--verify-to 1000000] [--games 200] [--misere] [--seed 42]
+ * </pre>
+ */
+public class SelfPlay {
+
+    // Largest brute-force table; --verify-to is lowered to fit for several piles
+    private static final long MAX_VERIFY_STATES = 1L << 26;
+    private static final int MAX_REPORTED_FAILURES = 5;
+
+    public static void main(String[] args) {
+        String[] moveSets = {"1,2", "1,3,4", "2,5,7"};
+        int piles = 1;
+        int from = 15;
+        int to = 30;
+        int verifyTo = 1_000_000;
+        int games = 200;
+        boolean misere = false;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--moves" -> moveSets = args[++i].split(";");
+                case "--piles" -> piles = Integer.parseInt(args[++i]);
+                case "--from" -> from = Integer.parseInt(args[++i]);
+                case "--to" -> to = Integer.parseInt(args[++i]);
+                case "--verify-to" -> verifyTo = Integer.parseInt(args[++i]);
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--misere" -> misere = true;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        boolean ok = true;
+        for (String moves : moveSets) {
+            SubtractionGame rules = new SubtractionGame(SubtractionGame.parseMoves(moves));
+            ok &= verify(moves, rules, piles, verifyTo, misere);
+        }
+        System.out.println();
+        System.out.printf("%-10s %-18s %10s %9s %14s %12s%n", "moves", "pairing", "games", "ai-win%", "winnable-won", "games/s");
+        for (String moves : moveSets) {
+            SubtractionGame rules = new SubtractionGame(SubtractionGame.parseMoves(moves));
+            for (Bot opponent : Bot.values()) {
+                ok &= play(moves, rules, opponent, piles, from, to, games, misere, seed);
+            }
+        }
+        System.out.println(ok ? "All checks passed" : "FAILED");
+        if (!ok) System.exit(1);
+    }
+
+    // ==========================================
+    // EXHAUSTIVE VERIFICATION
+    // ==========================================
+
+    private static boolean verify(String moves, SubtractionGame rules, int piles, int verifyTo, boolean misere) {
+        // Misère play over several piles is only exact within the solver's exact table
+        long maxStates = misere && piles > 1 ? SubtractionGame.MAX_EXACT_STATES : MAX_VERIFY_STATES;
+        int bound = fit(verifyTo, piles, maxStates);
+        long start = System.nanoTime();
+        int[] weights = new int[piles];
+        boolean[] wins = bruteForce(rules.moves(), piles, bound, misere, weights);
+
+        AtomicLong failures = new AtomicLong();
+        long[] top = new long[piles];
+        Arrays.fill(top, bound);
+        // Primed once, so the shared exact table covers every position before the threads start
+        rules.isWinning(top, misere);
+        IntStream.range(0, wins.length).parallel().forEach(index -> {
+            long[] position = decode(index, weights, bound);
+            String problem = null;
+            if (rules.isWinning(position, misere) != wins[index]) {
+                problem = "solver says " + (wins[index] ? "lost" : "won");
+            } else if (wins[index] && rules.canMove(position)) {
+                CoinGame game = new CoinGame(rules, misere, position, CoinGame.Turn.AI);
+                SubtractionGame.Move move = game.chooseAiMove(ThreadLocalRandom.current());
+                if (wins[index - move.coins() * weights[move.pile()]]) problem = "AI move " + move + " does not win";
+            }
+            if (problem != null && failures.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+                System.out.println("  " + moves + " at " + Arrays.toString(position) + ": " + problem);
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "verify %-10s %d positions up to %d coins per pile: %s (%.3e positions/s)%n",
+                moves, wins.length, bound, failures.get() == 0 ? "OK" : failures.get() + " FAILURES", wins.length / seconds);
+        return failures.get() == 0;
+    }
+
+    /** Largest bound up to {@code verifyTo}, halving, whose table has at most {@code maxStates} positions. */
+    private static int fit(int verifyTo, int piles, long maxStates) {
+        int bound = verifyTo;
+        while (Math.pow(bound + 1.0, piles) > maxStates) bound /= 2;
+        return bound;
+    }
+
+    /**
+     * Win/loss for the player to move at every position with up to {@code bound} coins per
+     * pile, indexed in mixed radix; deliberately shares no code with SubtractionGame.
+     */
+    private static boolean[] bruteForce(int[] moves, int piles, int bound, boolean misere, int[] weights) {
+        int states = 1;
+        for (int p = 0; p < piles; p++) {
+            weights[p] = states;
+            states *= bound + 1;
+        }
+        boolean[] wins = new boolean[states];
+        for (int index = 0; index < states; index++) {
+            boolean canMove = false;
+            boolean win = false;
+            for (int p = 0; p < piles && !win; p++) {
+                int coins = index / weights[p] % (bound + 1);
+                for (int s : moves) {
+                    if (s > coins) continue;
+                    canMove = true;
+                    if (!wins[index - s * weights[p]]) {
+                        win = true;
+                        break;
+                    }
+                }
+            }
+            // Nobody can move: the last move won, or lost in misère play
+            wins[index] = canMove ? win : misere;
+        }
+        return wins;
+    }
+
+    private static long[] decode(int index, int[] weights, int bound) {
+        long[] position = new long[weights.length];
+        for (int p = 0; p < weights.length; p++) position[p] = index / weights[p] % (bound + 1);
+        return position;
+    }
+
+    // ==========================================
+    // SELF-PLAY
+    // ==========================================
+
+    private enum Bot {
+        RANDOM("optimal-vs-random"),
+        OPTIMAL("optimal-vs-optimal");
+
+        final String pairing;
+
+        Bot(String pairing) {
+            this.pairing = pairing;
+        }
+
+        SubtractionGame.Move move(CoinGame game, RandomGenerator random) {
+            if (this == OPTIMAL) return game.chooseAiMove(random);
+            int[] moves = game.rules().moves();
+            while (true) {
+                int pile = random.nextInt(game.pileCount());
+                int amount = moves[random.nextInt(moves.length)];
+                if (amount <= game.pile(pile)) return new SubtractionGame.Move(pile, amount);
+            }
+        }
+    }
+
+    private static boolean play(String moves, SubtractionGame rules, Bot opponent, int piles, int from, int to,
+                                int games, boolean misere, long seed) {
+        int span = to - from + 1;
+        int starts = (int) Math.pow(span, piles);
+        // One task per start position and first player, each with its own random split up front
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[2 * starts];
+        for (int i = 0; i < randoms.length; i++) randoms[i] = root.split();
+
+        long start = System.nanoTime();
+        long[][] outcomes = IntStream.range(0, 2 * starts).parallel().mapToObj(task -> {
+            long[] position = new long[piles];
+            for (int p = 0, rest = task / 2; p < piles; p++, rest /= span) position[p] = from + rest % span;
+            CoinGame.Turn first = task % 2 == 0 ? CoinGame.Turn.AI : CoinGame.Turn.USER;
+            boolean winnable = rules.isWinning(position, misere) == (first == CoinGame.Turn.AI);
+
+            long aiWins = 0;
+            for (int g = 0; g < games; g++) {
+                CoinGame game = new CoinGame(rules, misere, position, first);
+                while (!game.isOver()) {
+                    CoinGame.Turn turn = game.currentTurn();
+                    SubtractionGame.Move move = turn == CoinGame.Turn.AI
+                            ? game.chooseAiMove(randoms[task]) : opponent.move(game, randoms[task]);
+                    game.take(turn, move.pile(), move.coins());
+                }
+                if (game.winner() == CoinGame.Turn.AI) aiWins++;
+            }
+            // {AI wins, winnable games lost by the AI}
+            return new long[]{aiWins, winnable ? games - aiWins : 0};
+        }).toArray(long[][]::new);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long total = (long) outcomes.length * games;
+        long aiWins = Arrays.stream(outcomes).mapToLong(o -> o[0]).sum();
+        long lostWinnable = Arrays.stream(outcomes).mapToLong(o -> o[1]).sum();
+        System.out.printf(Locale.ROOT, "%-10s %-18s %10d %9.2f %14s %12.3e%n", moves, opponent.pairing, total,
+                100.0 * aiWins / total, lostWinnable == 0 ? "all" : lostWinnable + " LOST", total / seconds);
+        return lostWinnable == 0;
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * On-disk cache of solver tables, one file per move set.
+ * <p>
+ * A file is named after a 64-bit fingerprint of the sorted move set and
+ * holds the move set itself (to rule out fingerprint collisions) followed
+ * by the Grundy and misère sequences: preperiod, period, length, then one
+ * byte per value. Files are memory-mapped read-only, so a known rule set
+ * costs no computation and processes share one copy through the page cache.
+ * New files are written to a temp file and atomically renamed into place.
+ */
+final class StrategyTables {
+    private static final int MAGIC = 0x53475431; // "SGT1"
+    private static final int VERSION = 1;
+
+    private final Path dir;
+
+    StrategyTables(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Returns the solver for a move set, from its file if there is one, otherwise computing and saving it. */
+    SubtractionGame load(int... moves) throws IOException {
+        SubtractionGame cached = find(moves);
+        if (cached != null) return cached;
+
+        SubtractionGame game = new SubtractionGame(moves);
+        save(game);
+        return game;
+    }
+
+    /** The solver for a move set from its file, or null if there is no usable file. */
+    SubtractionGame find(int... moves) throws IOException {
+        int[] sorted = Arrays.stream(moves).sorted().distinct().toArray();
+        return read(file(sorted), sorted);
+    }
+
+    void save(SubtractionGame game) throws IOException {
+        write(file(game.moves()), game);
+    }
+
+    private Path file(int[] sortedMoves) {
+        return dir.resolve(String.format("%016x.sgt", fingerprint(sortedMoves)));
+    }
+
+    /** FNV-1a over the format version and the sorted moves. */
+    static long fingerprint(int[] sortedMoves) {
+        long hash = 0xCBF29CE484222325L;
+        hash = (hash ^ VERSION) * 0x100000001B3L;
+        for (int move : sortedMoves) hash = (hash ^ move) * 0x100000001B3L;
+        return hash;
+    }
+
+    /** Maps a table file; null if it does not exist, is damaged or belongs to another move set, so it gets rewritten. */
+    private static SubtractionGame read(Path file, int[] moves) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            // A damaged count must not size an allocation
+            if (buffer.getInt() != moves.length) return null;
+            int[] stored = new int[moves.length];
+            for (int i = 0; i < stored.length; i++) stored[i] = buffer.getInt();
+            if (!Arrays.equals(stored, moves)) return null;
+
+            SubtractionGame.Sequence grundy = readSequence(buffer);
+            SubtractionGame.Sequence misere = readSequence(buffer);
+            return grundy == null || misere == null ? null : new SubtractionGame(moves, grundy, misere);
+        } catch (NoSuchFileException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static SubtractionGame.Sequence readSequence(ByteBuffer buffer) {
+        int preperiod = buffer.getInt();
+        int period = buffer.getInt();
+        int length = buffer.getInt();
+        if (preperiod < 0 || period < 1 || (long) preperiod + period > length || length > buffer.remaining()) return null;
+        ByteBuffer values = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return new SubtractionGame.Sequence(values, preperiod, period);
+    }
+
+    private void write(Path file, SubtractionGame game) throws IOException {
+        Files.createDirectories(dir);
+        int[] moves = game.moves();
+        SubtractionGame.Sequence grundy = game.grundySequence();
+        SubtractionGame.Sequence misere = game.misereSequence();
+        ByteBuffer buffer = ByteBuffer.allocate((3 + moves.length + 6) * Integer.BYTES
+                + grundy.values().limit() + misere.values().limit());
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(moves.length);
+        for (int move : moves) buffer.putInt(move);
+        writeSequence(buffer, grundy);
+        writeSequence(buffer, misere);
+
+        // Processes racing on the same rule set write identical files, so either rename may win
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, buffer.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeSequence(ByteBuffer buffer, SubtractionGame.Sequence sequence) {
+        ByteBuffer values = sequence.values();
+        buffer.putInt(sequence.preperiod()).putInt(sequence.period()).putInt(values.limit());
+        buffer.put(values.duplicate().position(0));
+    }
+}
@@ -0,0 +1,389 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Solver for subtraction games: a move takes s coins from one pile, for some s
+ * in a fixed move set. Normal play: whoever makes the last move wins. Misère:
+ * whoever makes the last move loses.
+ * <p>
+ * A pile of n coins depends only on the values of the max(S) smaller piles,
+ * so the value sequence of one pile is eventually periodic. The values are
+ * computed iteratively into a byte table until a window of max(S) values
+ * repeats; from then on any pile, however large, is answered from the table
+ * in O(1). Several piles under normal play are combined by the XOR of their
+ * Sprague-Grundy values.
+ * <p>
+ * Misère play does not combine by XOR. A single live pile uses its own
+ * periodic misère sequence. Several live piles small enough are solved
+ * exactly with an outcome table over all sub-positions; anything else falls
+ * back to the misère Nim rule, which is exact for move sets {1..k} and a
+ * heuristic otherwise.
+ * <p>
+ * The outcome of a position depends neither on the order of its piles nor
+ * on dead piles (smaller than every move), so the exact table is indexed by
+ * the live piles sorted in descending order. One table per solver covers
+ * every pile count and grows to the largest position seen while it fits
+ * {@link #MAX_EXACT_STATES}. Tables are immutable and replaced as a whole,
+ * so one solver is shared by any number of games and threads.
+ */
+final class SubtractionGame {
+    static final int MAX_MOVE = 1000;
+    // Grundy values never exceed the number of moves, and the mex is taken over a 64-bit mask
+    static final int MAX_MOVES = 62;
+    // Values computed before giving up on finding the period
+    private static final int MAX_TABLE = 1 << 20;
+    // Largest number of sub-positions solved exactly under misère play
+    static final int MAX_EXACT_STATES = 1 << 22;
+
+    private final int[] moves;
+    private final Sequence grundy;
+    private final Sequence misere;
+
+    // Exact misère outcomes; readers take the current table, builders hold the lock
+    private volatile ExactTable exact;
+    private final ReentrantLock exactLock = new ReentrantLock();
+
+    /** A move: take {@code coins} from pile number {@code pile}. */
+    record Move(int pile, int coins) {
+    }
+
+    SubtractionGame(int... moves) {
+        int[] sorted = Arrays.stream(moves).sorted().distinct().toArray();
+        if (sorted.length == 0 || sorted.length > MAX_MOVES || sorted[0] < 1 || sorted[sorted.length - 1] > MAX_MOVE) {
+            throw new IllegalArgumentException("Expected 1 to " + MAX_MOVES + " moves between 1 and " + MAX_MOVE
+                    + ": " + Arrays.toString(moves));
+        }
+        this.moves = sorted;
+        this.grundy = Sequence.compute(sorted, false);
+        this.misere = Sequence.compute(sorted, true);
+    }
+
+    /** Rebuilds a solver from tables computed earlier (see {@link StrategyTables}). */
+    SubtractionGame(int[] moves, Sequence grundy, Sequence misere) {
+        this.moves = moves.clone();
+        this.grundy = grundy;
+        this.misere = misere;
+    }
+
+    int[] moves() {
+        return moves.clone();
+    }
+
+    /** Parses a move set such as "1, 3, 4"; commas, semicolons and spaces all separate moves. */
+    static int[] parseMoves(String text) {
+        String[] parts = text.strip().split("[,;\\s]+");
+        int[] moves = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                moves[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a move: " + parts[i], e);
+            }
+        }
+        return moves;
+    }
+
+    /** Sprague-Grundy value of a single pile. */
+    int grundy(long coins) {
+        return grundy.at(coins);
+    }
+
+    /** First pile size from which the Grundy values repeat. */
+    int preperiod() {
+        return grundy.preperiod;
+    }
+
+    int period() {
+        return grundy.period;
+    }
+
+    Sequence grundySequence() {
+        return grundy;
+    }
+
+    Sequence misereSequence() {
+        return misere;
+    }
+
+    boolean canMove(long[] piles) {
+        for (long pile : piles) {
+            if (pile >= moves[0]) return true;
+        }
+        return false;
+    }
+
+    /** Whether the player to move wins with perfect play. */
+    boolean isWinning(long[] piles, boolean misereRules) {
+        if (!misereRules) return xor(piles) != 0;
+
+        int live = -1;
+        for (int i = 0; i < piles.length; i++) {
+            if (piles[i] < moves[0]) continue;
+            if (live >= 0) {
+                int outcome = exactOutcome(piles);
+                return outcome >= 0 ? outcome == 1 : misereNim(piles);
+            }
+            live = i;
+        }
+        // No live pile: the opponent made the last move
+        return live < 0 || misere.at(piles[live]) != 0;
+    }
+
+    /** A move to a position lost for the opponent, or null if every move loses against perfect play. */
+    Move winningMove(long[] piles, boolean misereRules) {
+        long[] after = piles.clone();
+        for (int i = 0; i < piles.length; i++) {
+            for (int s : moves) {
+                if (s > piles[i]) break;
+                after[i] = piles[i] - s;
+                boolean opponentWins = isWinning(after, misereRules);
+                after[i] = piles[i];
+                if (!opponentWins) return new Move(i, s);
+            }
+        }
+        return null;
+    }
+
+    private int xor(long[] piles) {
+        int xor = 0;
+        for (long pile : piles) xor ^= grundy.at(pile);
+        return xor;
+    }
+
+    /** Misère Nim: play as in normal play, except that when no pile has a value above 1 the parity flips. */
+    private boolean misereNim(long[] piles) {
+        boolean big = false;
+        for (long pile : piles) {
+            if (grundy.at(pile) > 1) {
+                big = true;
+                break;
+            }
+        }
+        int xor = xor(piles);
+        return big ? xor != 0 : xor == 0;
+    }
+
+    // ==========================================
+    // EXACT MISÈRE TABLE
+    // ==========================================
+
+    /** 1 if the player to move wins, 0 if not, -1 if the position is too large to solve exactly. */
+    private int exactOutcome(long[] piles) {
+        long[] position = canonical(piles);
+        ExactTable table = exact;
+        if (table == null || !table.covers(position)) {
+            table = growExact(position);
+            if (table == null) return -1;
+        }
+        return table.wins[table.index(position)] ? 1 : 0;
+    }
+
+    /** The live piles in descending order; positions have few piles, so an insertion sort does. */
+    private long[] canonical(long[] piles) {
+        int count = 0;
+        for (long pile : piles) {
+            if (pile >= moves[0]) count++;
+        }
+        long[] position = new long[count];
+        int sorted = 0;
+        for (long pile : piles) {
+            if (pile < moves[0]) continue;
+            int i = sorted++;
+            for (; i > 0 && position[i - 1] < pile; i--) position[i] = position[i - 1];
+            position[i] = pile;
+        }
+        return position;
+    }
+
+    /**
+     * Replaces the table by one that also covers the position: the union of both
+     * bounds if it fits, otherwise the position alone. Null if even that is too large.
+     */
+    private ExactTable growExact(long[] position) {
+        exactLock.lock();
+        try {
+            ExactTable table = exact;
+            if (table != null && table.covers(position)) return table;
+
+            long[] bounds = position.clone();
+            if (table != null) {
+                bounds = Arrays.copyOf(position, Math.max(position.length, table.bounds.length));
+                for (int i = 0; i < table.bounds.length; i++) bounds[i] = Math.max(bounds[i], table.bounds[i]);
+            }
+            if (states(bounds) > MAX_EXACT_STATES) bounds = position;
+            if (states(bounds) > MAX_EXACT_STATES) return null;
+
+            table = ExactTable.build(moves, bounds);
+            exact = table;
+            return table;
+        } finally {
+            exactLock.unlock();
+        }
+    }
+
+    private static long states(long[] bounds) {
+        long states = 1;
+        for (long bound : bounds) {
+            if (bound >= MAX_EXACT_STATES) return MAX_EXACT_STATES + 1L;
+            states *= bound + 1;
+            if (states > MAX_EXACT_STATES) return states;
+        }
+        return states;
+    }
+
+    /** Outcomes of every position within {@code bounds} (descending), indexed in mixed radix. */
+    private record ExactTable(long[] bounds, boolean[] wins) {
+
+        static ExactTable build(int[] moves, long[] bounds) {
+            int states = (int) states(bounds);
+            boolean[] wins = new boolean[states];
+
+            // A move lowers one digit of the mixed-radix index, so every successor is already solved
+            long[] position = new long[bounds.length];
+            for (int index = 0; index < states; index++) {
+                boolean canMove = false;
+                boolean win = false;
+                int weight = 1;
+                for (int i = 0; i < bounds.length && !win; i++) {
+                    for (int s : moves) {
+                        if (s > position[i]) break;
+                        canMove = true;
+                        if (!wins[index - s * weight]) {
+                            win = true;
+                            break;
+                        }
+                    }
+                    weight *= (int) (bounds[i] + 1);
+                }
+                wins[index] = win || !canMove;
+
+                for (int i = 0; i < position.length && ++position[i] > bounds[i]; i++) position[i] = 0;
+            }
+            return new ExactTable(bounds, wins);
+        }
+
+        /** Whether a canonical position lies within the bounds; missing piles count as empty. */
+        boolean covers(long[] position) {
+            if (position.length > bounds.length) return false;
+            for (int i = 0; i < position.length; i++) {
+                if (position[i] > bounds[i]) return false;
+            }
+            return true;
+        }
+
+        int index(long[] position) {
+            int index = 0;
+            for (int i = bounds.length - 1; i >= 0; i--) {
+                index = index * (int) (bounds[i] + 1) + (i < position.length ? (int) position[i] : 0);
+            }
+            return index;
+        }
+    }
+
+    // ==========================================
+    // PERIODIC SEQUENCES
+    // ==========================================
+
+    /**
+     * Values of a single pile by size: Grundy values, or misère outcomes (1 = the player
+     * to move wins). Holds values up to where a window of max(S) values first repeats;
+     * the buffer may be memory-mapped.
+     */
+    record Sequence(ByteBuffer values, int preperiod, int period) {
+
+        static Sequence compute(int[] moves, boolean misereOutcome) {
+            int width = moves[moves.length - 1];
+            byte[] table = new byte[Math.max(64, 4 * width)];
+            WindowIndex seen = new WindowIndex();
+            long hash = 0;
+            // Multiplier for the value leaving the window
+            long drop = 1;
+            for (int i = 0; i < width; i++) drop *= WindowIndex.BASE;
+
+            for (int n = 0; ; n++) {
+                if (n >= width) {
+                    // The window of values before n decides everything from n on
+                    int first = seen.putIfAbsent(hash, n, table, width);
+                    if (first >= 0) return new Sequence(ByteBuffer.wrap(Arrays.copyOf(table, n)), first - width, n - first);
+                }
+                if (n == MAX_TABLE) throw new IllegalArgumentException("No period found for moves " + Arrays.toString(moves));
+                if (n == table.length) table = Arrays.copyOf(table, 2 * table.length);
+
+                byte value = misereOutcome ? outcome(moves, table, n) : mex(moves, table, n);
+                table[n] = value;
+                hash = hash * WindowIndex.BASE + value + 1;
+                if (n >= width) hash -= drop * (table[n - width] + 1);
+            }
+        }
+
+        private static byte mex(int[] moves, byte[] table, int n) {
+            long reachable = 0;
+            for (int s : moves) {
+                if (s > n) break;
+                reachable |= 1L << table[n - s];
+            }
+            return (byte) Long.numberOfTrailingZeros(~reachable);
+        }
+
+        private static byte outcome(int[] moves, byte[] table, int n) {
+            if (n < moves[0]) return 1; // Nothing to take: the opponent took last and lost
+            for (int s : moves) {
+                if (s > n) break;
+                if (table[n - s] == 0) return 1;
+            }
+            return 0;
+        }
+
+        int at(long n) {
+            if (n < 0) throw new IllegalArgumentException("Negative pile: " + n);
+            if (n < values.limit()) return values.get((int) n);
+            return values.get((int) (preperiod + (n - preperiod) % period));
+        }
+    }
+
+    /** Open-addressing map from window hash to the first position it was seen at. */
+    private static final class WindowIndex {
+        static final long BASE = 0x9E3779B97F4A7C15L;
+
+        private long[] hashes = new long[256];
+        private int[] positions = new int[256];
+        private int size;
+
+        /**
+         * Returns the earlier position whose window (the {@code width} values before
+         * it) equals the one before {@code n}, or records {@code n} and returns -1.
+         */
+        int putIfAbsent(long hash, int n, byte[] table, int width) {
+            if (2 * (size + 1) > positions.length) grow();
+            int mask = positions.length - 1;
+            for (int slot = (int) (hash ^ hash >>> 32) & mask; ; slot = (slot + 1) & mask) {
+                int position = positions[slot];
+                if (position == 0) {
+                    hashes[slot] = hash;
+                    positions[slot] = n;
+                    size++;
+                    return -1;
+                }
+                if (hashes[slot] == hash && Arrays.equals(table, position - width, position, table, n - width, n)) {
+                    return position;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldHashes = hashes;
+            int[] oldPositions = positions;
+            hashes = new long[2 * oldHashes.length];
+            positions = new int[2 * oldPositions.length];
+            int mask = positions.length - 1;
+            for (int i = 0; i < oldPositions.length; i++) {
+                if (oldPositions[i] == 0) continue;
+                int slot = (int) (oldHashes[i] ^ oldHashes[i] >>> 32) & mask;
+                while (positions[slot] != 0) slot = (slot + 1) & mask;
+                hashes[slot] = oldHashes[i];
+                positions[slot] = oldPositions[i];
+            }
+        }
+    }
+}
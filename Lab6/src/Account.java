@@ -0,0 +1,28 @@
+/**
+ * Bank account balance in whole cents. Every operation returns the balance it
+ * produced, read in the same atomic step as the change itself.
+ */
+interface Account {
+    /** Returned by {@link #withdraw(long)} when the balance does not cover the amount. */
+    long INSUFFICIENT_FUNDS = -1;
+
+    /** Adds a positive amount and returns the new balance. */
+    long deposit(long cents);
+
+    /** Takes a positive amount if the balance covers it; returns the new balance or {@link #INSUFFICIENT_FUNDS}. */
+    long withdraw(long cents);
+
+    long balance();
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+
+    static void requirePositive(long cents) {
+        if (cents <= 0) throw new IllegalArgumentException("Amount must be positive: " + cents);
+    }
+}
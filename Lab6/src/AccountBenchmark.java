@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.LongFunction;
+
+/**
+ * Headless contention benchmark: many threads hammer one account, alternating
+ * withdrawals and deposits, once on {@link SynchronizedAccount} and once on
+ * {@link AtomicAccount}.
+ * <p>
+ * {@code --hold-us} adds processing time to every withdrawal the way the ATM
+ * used to do it: inside the account's lock for the synchronized account, before
+ * the compare-and-set for the atomic one. After every run the final balance is
+ * checked against the successful operations. Reported per run: throughput,
+ * withdrawals refused for lack of funds and sampled operation latency.
+ * <p>
+ * Usage:
+ * <pre>
+ * java AccountBenchmark [--threads 8] [--ops 1000000] [--hold-us 0] [--rounds 3]
+ * </pre>
+ */
+public class AccountBenchmark {
+
+    private static final long INITIAL_CENTS = 1_000_00;
+    private static final long AMOUNT_CENTS = 25_00;
+    // Every 16th operation is timed, so the clock reads do not dominate
+    private static final int SAMPLE_MASK = 15;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = 8;
+        int ops = 1_000_000;
+        long holdNanos = 0;
+        int rounds = 3;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--ops" -> ops = Integer.parseInt(args[++i]);
+                case "--hold-us" -> holdNanos = Long.parseLong(args[++i]) * 1000;
+                case "--rounds" -> rounds = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.printf("%-13s %5s %8s %12s %12s %10s %10s %10s%n",
+                "account", "round", "threads", "ops", "ops/s", "refused", "p50 us", "p99 us");
+        boolean ok = true;
+        // Later rounds run on warmed-up code; the first one is for the JIT
+        for (int round = 1; round <= rounds; round++) {
+            ok &= run("synchronized", SynchronizedAccount::new, true, round, threads, ops, holdNanos);
+            ok &= run("atomic", AtomicAccount::new, false, round, threads, ops, holdNanos);
+        }
+        System.out.println(ok ? "All balances consistent" : "FAILED");
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean run(String name, LongFunction<Account> factory, boolean holdUnderLock,
+                               int round, int threads, int ops, long holdNanos) throws InterruptedException {
+        Account account = factory.apply(INITIAL_CENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] withdrawn = new long[threads];
+        long[] refused = new long[threads];
+        long[][] samples = new long[threads][];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = Thread.ofPlatform().name("bench-" + t).start(() -> {
+                long[] latencies = new long[ops / (SAMPLE_MASK + 1) + 1];
+                int count = 0;
+                awaitQuietly(start);
+                for (int i = 0; i < ops; i++) {
+                    boolean sampled = (i & SAMPLE_MASK) == 0;
+                    long begin = sampled ? System.nanoTime() : 0;
+                    if ((i & 1) == 0) {
+                        long balance = holdUnderLock ? withdrawHoldingLock(account, holdNanos) : withdrawAfterHold(account, holdNanos);
+                        if (balance == Account.INSUFFICIENT_FUNDS) refused[worker]++;
+                        else withdrawn[worker]++;
+                    } else {
+                        account.deposit(AMOUNT_CENTS);
+                    }
+                    if (sampled) latencies[count++] = System.nanoTime() - begin;
+                }
+                samples[worker] = Arrays.copyOf(latencies, count);
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        long deposits = (long) threads * (ops / 2);
+        long expected = INITIAL_CENTS + (deposits - Arrays.stream(withdrawn).sum()) * AMOUNT_CENTS;
+        boolean consistent = account.balance() == expected;
+        long[] latencies = Arrays.stream(samples).flatMapToLong(Arrays::stream).sorted().toArray();
+        long total = (long) threads * ops;
+        System.out.printf(Locale.ROOT, "%-13s %5d %8d %12d %12.3e %10d %10.2f %10.2f%s%n",
+                name, round, threads, total, total / seconds, Arrays.stream(refused).sum(),
+                percentile(latencies, 0.5), percentile(latencies, 0.99),
+                consistent ? "" : "  BALANCE " + account.balance() + " != " + expected);
+        return consistent;
+    }
+
+    /** The old ATM: the processing time is spent while holding the account's monitor. */
+    private static long withdrawHoldingLock(Account account, long holdNanos) {
+        synchronized (account) {
+            hold(holdNanos);
+            return account.withdraw(AMOUNT_CENTS);
+        }
+    }
+
+    /** The new ATM: processing first, then a lock-free withdrawal. */
+    private static long withdrawAfterHold(Account account, long holdNanos) {
+        hold(holdNanos);
+        return account.withdraw(AMOUNT_CENTS);
+    }
+
+    // Busy wait: sleeping is far too coarse for microseconds
+    private static void hold(long nanos) {
+        if (nanos == 0) return;
+        long until = System.nanoTime() + nanos;
+        while (System.nanoTime() < until) Thread.onSpinWait();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Nearest-rank percentile of sorted nanosecond values, in microseconds. */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e3;
+    }
+}
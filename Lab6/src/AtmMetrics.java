@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Where the ATM's time goes: a latency histogram per operation, plus counters
+ * for denied operations, missing accounts and contended bank locks.
+ * <p>
+ * Latency is the time spent in the bank (stripe locks, the account update and
+ * the journal commit), not the simulated processing delay or the logging.
+ * Everything is cumulative since start; {@link #intervalReport()} reports
+ * only what happened since its previous call, for the periodic dump.
+ */
+final class AtmMetrics implements AtmMetricsMXBean {
+
+    enum Operation { OPEN, DEPOSIT, WITHDRAW, TRANSFER, CLOSE }
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder denials = new LongAdder();
+    private final LongAdder missingAccounts = new LongAdder();
+    private final LongSupplier lockContentions;
+
+    // Interval report only: the state at its previous call
+    private final Map<Operation, long[]> reported = new EnumMap<>(Operation.class);
+    private long reportedDenials;
+    private long reportedMissing;
+    private long reportedContentions;
+
+    AtmMetrics(LongSupplier lockContentions) {
+        this.lockContentions = lockContentions;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            reported.put(operation, new long[LatencyHistogram.BUCKETS]);
+        }
+    }
+
+    void record(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+
+    /** Refused by a rule: invalid amount, withdrawal limit, insufficient funds, overflow, transfer to the same account. */
+    void denied() {
+        denials.increment();
+    }
+
+    void missingAccount() {
+        missingAccounts.increment();
+    }
+
+    // ==========================================
+    // TEXT REPORTS
+    // ==========================================
+
+    /** One line per operation with any calls since the previous interval report, then the counters. */
+    synchronized List<String> intervalReport() {
+        List<String> lines = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            long[] now = latencies.get(operation).counts();
+            long[] delta = LatencyHistogram.difference(now, reported.get(operation));
+            reported.put(operation, now);
+            if (LatencyHistogram.total(delta) > 0) lines.add(line(operation, delta));
+        }
+        long denied = denials.sum();
+        long missing = missingAccounts.sum();
+        long contended = lockContentions.getAsLong();
+        if (!lines.isEmpty()) lines.add(counters(denied - reportedDenials, missing - reportedMissing, contended - reportedContentions));
+        reportedDenials = denied;
+        reportedMissing = missing;
+        reportedContentions = contended;
+        return lines;
+    }
+
+    /** Same layout as the interval report, cumulative since start. */
+    List<String> totalReport() {
+        List<String> lines = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            long[] counts = latencies.get(operation).counts();
+            if (LatencyHistogram.total(counts) > 0) lines.add(line(operation, counts));
+        }
+        lines.add(counters(denials.sum(), missingAccounts.sum(), lockContentions.getAsLong()));
+        return lines;
+    }
+
+    private static String line(Operation operation, long[] counts) {
+        return String.format(Locale.ROOT, "%-8s n=%-8d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                operation.name().toLowerCase(Locale.ROOT), LatencyHistogram.total(counts),
+                micros(counts, 0.5), micros(counts, 0.99), micros(counts, 0.999), micros(counts, 1.0));
+    }
+
+    private static String counters(long denied, long missing, long contended) {
+        return String.format(Locale.ROOT, "denials=%d missing-accounts=%d lock-contentions=%d", denied, missing, contended);
+    }
+
+    private static double micros(long[] counts, double fraction) {
+        return LatencyHistogram.percentile(counts, fraction) / 1e3;
+    }
+
+    // ==========================================
+    // JMX
+    // ==========================================
+
+    private <T> Map<String, T> perOperation(Function<long[], T> value) {
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            values.put(operation.name().toLowerCase(Locale.ROOT), value.apply(latencies.get(operation).counts()));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        return perOperation(LatencyHistogram::total);
+    }
+
+    @Override
+    public Map<String, Double> getP50Micros() {
+        return perOperation(counts -> micros(counts, 0.5));
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return perOperation(counts -> micros(counts, 0.99));
+    }
+
+    @Override
+    public Map<String, Double> getP999Micros() {
+        return perOperation(counts -> micros(counts, 0.999));
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        return perOperation(counts -> micros(counts, 1.0));
+    }
+
+    @Override
+    public long getLockContentions() {
+        return lockContentions.getAsLong();
+    }
+
+    @Override
+    public long getDenials() {
+        return denials.sum();
+    }
+
+    @Override
+    public long getMissingAccounts() {
+        return missingAccounts.sum();
+    }
+
+    @Override
+    public String getReport() {
+        return String.join("\n", totalReport());
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.Map;
+
+/**
+ * JMX view of {@link AtmMetrics}, registered as {@code lab6:type=AtmMetrics}.
+ * Latency maps are keyed by operation name and cumulative since start.
+ */
+public interface AtmMetricsMXBean {
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Double> getP50Micros();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getP999Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    long getLockContentions();
+
+    long getDenials();
+
+    long getMissingAccounts();
+
+    /** The same text as the periodic dump, cumulative since start. */
+    String getReport();
+}
@@ -0,0 +1,40 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free account: the balance is one atomic long. Deposits and withdrawals
+ * re-check the balance (overflow, funds) and retry their compare-and-set until
+ * no other thread changed it in between, so a busy account never blocks its
+ * users.
+ */
+final class AtomicAccount implements Account {
+    private final AtomicLong balance;
+
+    AtomicAccount(long initialCents) {
+        this.balance = new AtomicLong(initialCents);
+    }
+
+    @Override
+    public long deposit(long cents) {
+        Account.requirePositive(cents);
+        // Same overflow check as SynchronizedAccount; a failed update leaves the balance unchanged
+        return balance.updateAndGet(current -> Math.addExact(current, cents));
+    }
+
+    @Override
+    public long withdraw(long cents) {
+        Account.requirePositive(cents);
+        long current = balance.get();
+        while (true) {
+            if (current < cents) return INSUFFICIENT_FUNDS;
+            long witness = balance.compareAndExchange(current, current - cents);
+            if (witness == current) return current - cents;
+            // Lost the race: retry against the balance the winner left
+            current = witness;
+        }
+    }
+
+    @Override
+    public long balance() {
+        return balance.get();
+    }
+}
@@ -0,0 +1,363 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounts by id, and transfers between them.
+ * <p>
+ * A transfer must look atomic to other transfers and to the auditor: the money
+ * leaves one account and arrives in the other with nobody seeing it in flight.
+ * Accounts are mapped onto a fixed set of lock stripes; a transfer takes the
+ * stripes of both accounts, always the lower stripe index first, so two
+ * transfers in opposite directions can never wait for each other in a cycle.
+ * Opening and closing an account take its stripe too, so money is never paid
+ * into an account that is being closed. {@link #totalBalance()} takes every
+ * stripe in the same order and sees a state between transfers.
+ * <p>
+ * In memory, plain deposits and withdrawals stay lock-free on the account
+ * itself; they change the total on purpose. A durable bank ({@link #recover})
+ * also journals every change: it appends the record while holding the
+ * account's stripe, so the journal lists the changes of each account in the
+ * order they happened, and waits for the group commit only after letting go.
+ * If the journal refuses the record (it failed or is closed), the change is
+ * undone before the stripe is released, so no money moves without a record.
+ * Snapshots are taken periodically and on close.
+ * <p>
+ * Every stripe acquisition that had to wait for another thread is counted,
+ * see {@link #lockContentions()}.
+ */
+final class Bank implements Closeable {
+    /** Returned by {@link #deposit} and {@link #withdraw} when there is no such account. */
+    static final long NO_SUCH_ACCOUNT = -2;
+
+    private static final int STRIPE_BITS = 6;
+
+    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[1 << STRIPE_BITS];
+    private final LongAdder contentions = new LongAdder();
+    private final Journal journal; // Null when in memory only
+    private ScheduledExecutorService snapshots;
+    private long snapshotLsn;
+
+    /** A bank that lives in memory only. */
+    Bank() {
+        this.journal = null;
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new ReentrantLock();
+    }
+
+    private Bank(Path dir, boolean fsync, long segmentBytes) throws IOException {
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new ReentrantLock();
+        this.journal = Journal.open(dir, fsync, segmentBytes, new Journal.Recovery() {
+            @Override
+            public void restore(int accId, long cents) {
+                accounts.put(accId, new AtomicAccount(cents));
+            }
+
+            @Override
+            public void replay(byte type, int firstId, int secondId, long cents) {
+                // Balances are replayed as recorded; the funds were checked when it happened
+                switch (type) {
+                    case Journal.OPEN -> accounts.put(firstId, new AtomicAccount(cents));
+                    case Journal.CLOSE -> accounts.remove(firstId);
+                    case Journal.DEPOSIT -> adjust(firstId, cents);
+                    case Journal.WITHDRAW -> adjust(firstId, -cents);
+                    case Journal.TRANSFER -> {
+                        adjust(firstId, -cents);
+                        adjust(secondId, cents);
+                    }
+                    default -> throw new IllegalStateException("Unknown journal record type " + type);
+                }
+            }
+        });
+        this.snapshotLsn = journal.nextLsn();
+    }
+
+    /**
+     * Recovers a durable bank from {@code dir} (latest snapshot plus the journal after it) and
+     * keeps journaling into it. Without {@code fsync} records reach the OS but not the disk.
+     * A snapshot is taken every {@code snapshotSeconds} if anything changed.
+     */
+    static Bank recover(Path dir, boolean fsync, long segmentBytes, long snapshotSeconds) throws IOException {
+        Bank bank = new Bank(dir, fsync, segmentBytes);
+        bank.snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "bank-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bank.snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                bank.snapshot();
+            } catch (IOException e) {
+                System.err.println("Failed to write snapshot: " + e.getMessage());
+            }
+        }, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+        return bank;
+    }
+
+    // Recovery only: a missing account means it was closed meanwhile
+    private void adjust(int accId, long cents) {
+        Account account = accounts.get(accId);
+        if (account == null) return;
+        if (cents > 0) account.deposit(cents);
+        else account.withdraw(-cents);
+    }
+
+    /** OVERFLOW: the receiving balance would exceed the largest long; nothing moved. */
+    enum Status { DONE, NO_SUCH_ACCOUNT, SAME_ACCOUNT, INSUFFICIENT_FUNDS, OVERFLOW }
+
+    /** Outcome of a transfer, with both balances as the transfer left them. */
+    record Transfer(Status status, long fromBalance, long toBalance) {
+    }
+
+    private int stripe(int accId) {
+        // Fibonacci hashing, so neighbouring ids land on different stripes
+        return (accId * 0x9E3779B9) >>> (Integer.SIZE - STRIPE_BITS);
+    }
+
+    /** Takes a stripe lock, counting the acquisitions that find it held. */
+    private void lock(ReentrantLock lock) {
+        if (lock.tryLock()) return;
+        contentions.increment();
+        lock.lock();
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : stripes) lock(lock);
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) stripes[i].unlock();
+    }
+
+    /** Stripe lock acquisitions so far that had to wait. */
+    long lockContentions() {
+        return contentions.sum();
+    }
+
+    /** Waits until the journal record is on disk; nothing to wait for in memory or without a record. */
+    private void commit(long lsn) {
+        if (lsn >= 0) journal.awaitDurable(lsn);
+    }
+
+    /** Opens an account; false if the id is taken. */
+    boolean open(int accId, long initialCents) {
+        long lsn = -1;
+        ReentrantLock lock = stripes[stripe(accId)];
+        lock(lock);
+        try {
+            if (accounts.putIfAbsent(accId, new AtomicAccount(initialCents)) != null) return false;
+            if (journal != null) {
+                try {
+                    lsn = journal.append(Journal.OPEN, accId, 0, initialCents);
+                } catch (RuntimeException e) {
+                    accounts.remove(accId);
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit(lsn);
+        return true;
+    }
+
+    /** Removes an account and returns it, or null if there is none. */
+    Account close(int accId) {
+        long lsn = -1;
+        Account account;
+        ReentrantLock lock = stripes[stripe(accId)];
+        lock(lock);
+        try {
+            account = accounts.remove(accId);
+            if (account != null && journal != null) {
+                try {
+                    lsn = journal.append(Journal.CLOSE, accId, 0, 0);
+                } catch (RuntimeException e) {
+                    accounts.put(accId, account);
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit(lsn);
+        return account;
+    }
+
+    /** Adds to an account; returns the new balance or {@link #NO_SUCH_ACCOUNT}. */
+    long deposit(int accId, long cents) {
+        Account.requirePositive(cents);
+        if (journal == null) {
+            Account account = accounts.get(accId);
+            return account == null ? NO_SUCH_ACCOUNT : account.deposit(cents);
+        }
+        long lsn;
+        long balance;
+        ReentrantLock lock = stripes[stripe(accId)];
+        lock(lock);
+        try {
+            Account account = accounts.get(accId);
+            if (account == null) return NO_SUCH_ACCOUNT;
+            balance = account.deposit(cents);
+            try {
+                lsn = journal.append(Journal.DEPOSIT, accId, 0, cents);
+            } catch (RuntimeException e) {
+                account.withdraw(cents); // Covered: nothing else changes the account under its stripe
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit(lsn);
+        return balance;
+    }
+
+    /** Takes from an account; returns the new balance, {@link #NO_SUCH_ACCOUNT} or {@link Account#INSUFFICIENT_FUNDS}. */
+    long withdraw(int accId, long cents) {
+        Account.requirePositive(cents);
+        if (journal == null) {
+            Account account = accounts.get(accId);
+            return account == null ? NO_SUCH_ACCOUNT : account.withdraw(cents);
+        }
+        long lsn;
+        long balance;
+        ReentrantLock lock = stripes[stripe(accId)];
+        lock(lock);
+        try {
+            Account account = accounts.get(accId);
+            if (account == null) return NO_SUCH_ACCOUNT;
+            balance = account.withdraw(cents);
+            if (balance == Account.INSUFFICIENT_FUNDS) return balance;
+            try {
+                lsn = journal.append(Journal.WITHDRAW, accId, 0, cents);
+            } catch (RuntimeException e) {
+                account.deposit(cents);
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit(lsn);
+        return balance;
+    }
+
+    Transfer transfer(int fromId, int toId, long cents) {
+        Account.requirePositive(cents);
+        if (fromId == toId) return new Transfer(Status.SAME_ACCOUNT, 0, 0);
+        int first = stripe(fromId);
+        int second = stripe(toId);
+        if (first > second) {
+            int swap = first;
+            first = second;
+            second = swap;
+        }
+        Transfer result;
+        long lsn = -1;
+        lock(stripes[first]);
+        if (second != first) lock(stripes[second]);
+        try {
+            Account from = accounts.get(fromId);
+            Account to = accounts.get(toId);
+            if (from == null || to == null) return new Transfer(Status.NO_SUCH_ACCOUNT, 0, 0);
+            long fromBalance = from.withdraw(cents);
+            if (fromBalance == Account.INSUFFICIENT_FUNDS) return new Transfer(Status.INSUFFICIENT_FUNDS, from.balance(), to.balance());
+            long toBalance;
+            try {
+                toBalance = to.deposit(cents);
+            } catch (ArithmeticException e) {
+                // The money goes back before anyone can see it in flight
+                return new Transfer(Status.OVERFLOW, from.deposit(cents), to.balance());
+            }
+            result = new Transfer(Status.DONE, fromBalance, toBalance);
+            if (journal != null) {
+                try {
+                    lsn = journal.append(Journal.TRANSFER, fromId, toId, cents);
+                } catch (RuntimeException e) {
+                    to.withdraw(cents);
+                    from.deposit(cents);
+                    throw e;
+                }
+            }
+        } finally {
+            if (second != first) stripes[second].unlock();
+            stripes[first].unlock();
+        }
+        commit(lsn);
+        return result;
+    }
+
+    /** Current balance, or {@link #NO_SUCH_ACCOUNT}. */
+    long balance(int accId) {
+        Account account = accounts.get(accId);
+        return account == null ? NO_SUCH_ACCOUNT : account.balance();
+    }
+
+    int accountCount() {
+        return accounts.size();
+    }
+
+    /** Sum of all balances, with no transfer, opening or closing half done. */
+    long totalBalance() {
+        lockAll();
+        try {
+            long total = 0;
+            for (Account account : accounts.values()) total += account.balance();
+            return total;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // ==========================================
+    // DURABILITY
+    // ==========================================
+
+    /**
+     * Writes a snapshot of every balance if anything was journaled since the last one.
+     * The balances and the journal position are read under every stripe, so the snapshot
+     * contains exactly the records below that position; writing it happens after.
+     */
+    synchronized void snapshot() throws IOException {
+        if (journal == null) return;
+        int[] ids;
+        long[] balances;
+        long lsn;
+        lockAll();
+        try {
+            lsn = journal.nextLsn();
+            if (lsn == snapshotLsn) return;
+            ids = new int[accounts.size()];
+            balances = new long[ids.length];
+            int i = 0;
+            for (Map.Entry<Integer, Account> entry : accounts.entrySet()) {
+                ids[i] = entry.getKey();
+                balances[i++] = entry.getValue().balance();
+            }
+        } finally {
+            unlockAll();
+        }
+        // Every record below lsn must be in the segments before they can be replaced
+        if (lsn > 0) journal.awaitDurable(lsn - 1);
+        journal.writeSnapshot(lsn, ids, balances);
+        snapshotLsn = lsn;
+    }
+
+    /** Takes a final snapshot and closes the journal; nothing to do in memory. */
+    @Override
+    public void close() throws IOException {
+        if (journal == null) return;
+        snapshots.shutdownNow();
+        try {
+            snapshot();
+        } finally {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Log view for the Swing UI that stays responsive under any logging rate.
+ * <p>
+ * {@link #append(String)} may be called from any thread and never touches
+ * Swing: the line takes the next sequence number and is stored in a ring of
+ * the last {@code maxLines} lines, overwriting older ones. A Swing Timer drains
+ * the ring once per frame and hands the whole batch to the list model in one
+ * event. The model itself is a ring as well, so the view never holds more than
+ * {@code maxLines} lines. Each run of lines overwritten before a frame could
+ * show them is replaced by a "lines skipped" marker where the gap occurred.
+ */
+final class BufferedLogView {
+    private static final String PROTOTYPE_LINE = "[00:00:00.000] [User-000000] Transfer of 0000.00 from account #000000 to account #000000";
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<Line> pending;
+    private final int mask;
+    private long shown; // EDT only: sequence number of the next line to show
+
+    private final RingListModel model;
+    private final JList<String> list;
+
+    private record Line(long sequence, String text) {
+    }
+
+    BufferedLogView(int maxLines, int framesPerSecond) {
+        if (maxLines < 1) throw new IllegalArgumentException("The view needs at least one line: " + maxLines);
+        if (framesPerSecond < 1) throw new IllegalArgumentException("Frame rate must be positive: " + framesPerSecond);
+        // The pending ring is a power of two of at least maxLines
+        int capacity = Integer.highestOneBit(Math.max(2, maxLines - 1)) << 1;
+        this.pending = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.model = new RingListModel(maxLines);
+        this.list = new JList<>(model);
+        // A fixed row height spares the list from measuring every line; it follows the font
+        list.setPrototypeCellValue(PROTOTYPE_LINE);
+        list.addPropertyChangeListener("font", _ -> list.setPrototypeCellValue(PROTOTYPE_LINE));
+        new Timer(1000 / framesPerSecond, _ -> flush()).start();
+    }
+
+    JList<String> component() {
+        return list;
+    }
+
+    /** Queues a line for the next frame; safe from any thread. */
+    void append(String text) {
+        long next = sequence.getAndIncrement();
+        pending.set((int) next & mask, new Line(next, text));
+    }
+
+    /** Empties the view and forgets every line not shown yet. Call on the EDT. */
+    void clear() {
+        shown = sequence.get();
+        model.clear();
+    }
+
+    // Runs on the EDT once per frame
+    private void flush() {
+        long end = sequence.get();
+        if (end == shown) return;
+        // At most one marker per shown line, plus one for a gap at the end
+        String[] batch = new String[2 * (int) Math.min(end - shown, model.capacity) + 1];
+        int count = 0;
+        long skipped = 0;
+        if (end - shown > model.capacity) {
+            // Only the newest lines fit in the view anyway
+            skipped = end - model.capacity - shown;
+            shown = end - model.capacity;
+        }
+        while (shown < end) {
+            Line line = pending.get((int) shown & mask);
+            if (line == null || line.sequence() < shown) break; // Claimed but not stored yet: next frame
+            if (line.sequence() > shown) {
+                skipped++; // Overwritten since the sequence was read
+            } else {
+                if (skipped > 0) batch[count++] = skipped(skipped);
+                skipped = 0;
+                batch[count++] = line.text();
+            }
+            shown++;
+        }
+        if (skipped > 0) batch[count++] = skipped(skipped);
+        if (count == 0) return;
+        model.addAll(batch, count);
+        list.ensureIndexIsVisible(model.getSize() - 1); // Auto-scroll
+    }
+
+    private static String skipped(long lines) {
+        return "... " + lines + " lines skipped ...";
+    }
+
+    /** List model over a ring of the last {@code capacity} lines. */
+    private static final class RingListModel extends AbstractListModel<String> {
+        private final String[] lines;
+        private final int capacity;
+        private int first;
+        private int size;
+
+        RingListModel(int capacity) {
+            this.capacity = capacity;
+            this.lines = new String[capacity];
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return lines[(first + index) % capacity];
+        }
+
+        /** Appends a batch, dropping the oldest lines beyond capacity, with one event of each kind. */
+        void addAll(String[] batch, int count) {
+            int from = Math.max(0, count - capacity);
+            int added = count - from;
+            int dropped = Math.max(0, size + added - capacity);
+            if (dropped > 0) {
+                for (int i = 0; i < dropped; i++) lines[(first + i) % capacity] = null;
+                first = (first + dropped) % capacity;
+                size -= dropped;
+                fireIntervalRemoved(this, 0, dropped - 1);
+            }
+            for (int i = from; i < count; i++) lines[(first + size++) % capacity] = batch[i];
+            fireIntervalAdded(this, size - added, size - 1);
+        }
+
+        void clear() {
+            if (size == 0) return;
+            int removed = size;
+            Arrays.fill(lines, null);
+            first = 0;
+            size = 0;
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+    }
+}
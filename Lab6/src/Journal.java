@@ -0,0 +1,381 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal of account operations, with snapshots.
+ * <p>
+ * Every operation is one fixed-size record: type, two account ids, an amount in
+ * cents and a CRC32C of the rest. The n-th record ever appended has log
+ * sequence number (LSN) n. Records go to segment files named after the LSN of
+ * their first record ({@code %016x.wal}); a new segment is started once one
+ * grows past {@code segmentBytes}.
+ * <p>
+ * Group commit: {@link #append} only copies the record into a memory buffer.
+ * A single writer thread swaps the buffer, writes it and syncs it with one
+ * fsync for the whole batch. {@link #awaitDurable} waits for that sync, so
+ * while one batch is being synced the next one fills up.
+ * <p>
+ * A snapshot holds every balance as of some LSN. It is written to a temp file,
+ * synced and renamed into place. Segments whose records are all older are then
+ * deleted. Recovery loads the snapshot, replays the records from its LSN on,
+ * and cuts off a torn record at the end of the last segment.
+ */
+final class Journal implements Closeable {
+    static final byte OPEN = 1;
+    static final byte CLOSE = 2;
+    static final byte DEPOSIT = 3;
+    static final byte WITHDRAW = 4;
+    static final byte TRANSFER = 5;
+
+    private static final int SEGMENT_MAGIC = 0x41544D4A; // "ATMJ"
+    private static final int SNAPSHOT_MAGIC = 0x41544D53; // "ATMS"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    private static final int SNAPSHOT_HEADER_BYTES = 3 * Integer.BYTES + Long.BYTES;
+    // type, first id, second id, cents, CRC32C
+    static final int RECORD_BYTES = 1 + 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int BUFFER_RECORDS = 1 << 16;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    /** Receives the recovered state: the snapshot's balances first, then the newer records in order. */
+    interface Recovery {
+        void restore(int accId, long cents);
+
+        void replay(byte type, int firstId, int secondId, long cents);
+    }
+
+    private final Path dir;
+    private final boolean fsync;
+    private final long segmentBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition space = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    private ByteBuffer writing = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    private long nextLsn; // Guarded by lock
+    private volatile long durableLsn; // Every record below this LSN is on disk
+    private volatile IOException failure;
+    private boolean closed; // Guarded by lock
+
+    // Writer thread only
+    private final CRC32C crc = new CRC32C();
+    private FileChannel segment;
+    private final Thread writer;
+
+    private Journal(Path dir, boolean fsync, long segmentBytes, long nextLsn) throws IOException {
+        this.dir = dir;
+        this.fsync = fsync;
+        this.segmentBytes = segmentBytes;
+        this.nextLsn = nextLsn;
+        this.durableLsn = nextLsn;
+        this.segment = createSegment(nextLsn);
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Recovers the state kept in {@code dir} into {@code recovery} and opens the journal for appending. */
+    static Journal open(Path dir, boolean fsync, long segmentBytes, Recovery recovery) throws IOException {
+        Files.createDirectories(dir);
+        long lsn = readSnapshot(dir.resolve(SNAPSHOT_FILE), recovery);
+        List<Path> segments = segments(dir);
+        for (int i = 0; i < segments.size(); i++) {
+            lsn = replaySegment(segments.get(i), lsn, i == segments.size() - 1, recovery);
+        }
+        return new Journal(dir, fsync, segmentBytes, lsn);
+    }
+
+    // ==========================================
+    // APPENDING
+    // ==========================================
+
+    /** Queues a record and returns its LSN; pass it to {@link #awaitDurable} before acknowledging. */
+    long append(byte type, int firstId, int secondId, long cents) {
+        lock.lock();
+        try {
+            while (active.remaining() < RECORD_BYTES) {
+                checkOpen();
+                space.awaitUninterruptibly();
+            }
+            checkOpen();
+            // The writer fills in the CRC
+            active.put(type).putInt(firstId).putInt(secondId).putLong(cents).putInt(0);
+            if (active.position() == RECORD_BYTES) work.signal();
+            return nextLsn++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (failure != null) throw new UncheckedIOException("Journal failed", failure);
+        if (closed) throw new IllegalStateException("Journal closed");
+    }
+
+    /** Waits until the record with this LSN is on disk (written and synced, when syncing is on). */
+    void awaitDurable(long lsn) {
+        if (lsn < durableLsn) return;
+        lock.lock();
+        try {
+            while (lsn >= durableLsn) {
+                if (failure != null) throw new UncheckedIOException("Journal failed", failure);
+                synced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** LSN the next record will get; a snapshot taken now covers every record below it. */
+    long nextLsn() {
+        lock.lock();
+        try {
+            return nextLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ==========================================
+    // WRITER THREAD
+    // ==========================================
+
+    private void writeLoop() {
+        while (true) {
+            long batchEnd;
+            lock.lock();
+            try {
+                while (active.position() == 0 && !closed) work.awaitUninterruptibly();
+                if (active.position() == 0) break;
+                ByteBuffer full = active;
+                active = writing;
+                writing = full;
+                batchEnd = nextLsn;
+                space.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                writeBatch(batchEnd);
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    space.signalAll();
+                    synced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                System.err.println("Failed to write journal: " + e.getMessage());
+                return;
+            }
+
+            lock.lock();
+            try {
+                durableLsn = batchEnd;
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close journal segment.");
+        }
+    }
+
+    private void writeBatch(long batchEnd) throws IOException {
+        writing.flip();
+        for (int offset = 0; offset < writing.limit(); offset += RECORD_BYTES) {
+            crc.reset();
+            crc.update(writing.slice(offset, RECORD_BYTES - Integer.BYTES));
+            writing.putInt(offset + RECORD_BYTES - Integer.BYTES, (int) crc.getValue());
+        }
+        while (writing.hasRemaining()) segment.write(writing);
+        writing.clear();
+        if (fsync) segment.force(false);
+        if (segment.position() >= segmentBytes) {
+            segment.close();
+            segment = createSegment(batchEnd);
+        }
+    }
+
+    private FileChannel createSegment(long baseLsn) throws IOException {
+        Path file = dir.resolve(String.format("%016x.wal", baseLsn));
+        // A file of that name left by a crash holds no valid record, or its LSNs would have moved on
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES).putInt(SEGMENT_MAGIC).putInt(VERSION).putLong(baseLsn).flip();
+        while (header.hasRemaining()) channel.write(header);
+        if (fsync) {
+            channel.force(true);
+            syncDirectory(dir);
+        }
+        return channel;
+    }
+
+    /** Writes every queued record and stops the writer thread. */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==========================================
+    // SNAPSHOTS
+    // ==========================================
+
+    /**
+     * Saves the balances as of {@code lsn}, then deletes the segments the snapshot makes
+     * redundant. The caller must make sure no record below {@code lsn} is missing from them.
+     */
+    void writeSnapshot(long lsn, int[] ids, long[] balances) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES + ids.length * (Integer.BYTES + Long.BYTES) + Integer.BYTES);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(lsn).putInt(ids.length);
+        for (int i = 0; i < ids.length; i++) buffer.putInt(ids[i]).putLong(balances[i]);
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) checksum.getValue()).flip();
+
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        Path tmp = Files.createTempFile(dir, SNAPSHOT_FILE, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(dir);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        // A segment is redundant when the next one starts at or below the snapshot's LSN
+        List<Path> segments = segments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (baseLsn(segments.get(i + 1)) > lsn) break;
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /** Restores the snapshot's balances and returns its LSN, or 0 without a snapshot. */
+    private static long readSnapshot(Path file, Recovery recovery) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < SNAPSHOT_HEADER_BYTES + Integer.BYTES || buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a snapshot: " + file);
+        }
+        long lsn = buffer.getLong();
+        int count = buffer.getInt();
+        // The count decides every offset below, so it must match the file size first
+        if ((long) SNAPSHOT_HEADER_BYTES + (long) count * (Integer.BYTES + Long.BYTES) + Integer.BYTES != bytes.length) {
+            throw new IOException("Damaged snapshot: " + file);
+        }
+        int crcOffset = SNAPSHOT_HEADER_BYTES + count * (Integer.BYTES + Long.BYTES);
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes, 0, crcOffset);
+        if (buffer.getInt(crcOffset) != (int) checksum.getValue()) {
+            throw new IOException("Damaged snapshot: " + file);
+        }
+        for (int i = 0; i < count; i++) recovery.restore(buffer.getInt(), buffer.getLong());
+        return lsn;
+    }
+
+    // ==========================================
+    // RECOVERY
+    // ==========================================
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            // Fixed-width hex names sort by LSN
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    private static long baseLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseUnsignedLong(name.substring(0, name.length() - ".wal".length()), 16);
+    }
+
+    /**
+     * Replays the records of one segment from LSN {@code from} on and returns the LSN after its
+     * last record. A torn or damaged record is cut off in the last segment, fatal in any other.
+     */
+    private static long replaySegment(Path file, long from, boolean last, Recovery recovery) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE - 8));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole segment
+            }
+            buffer.flip();
+            if (buffer.remaining() < SEGMENT_HEADER_BYTES || buffer.getInt() != SEGMENT_MAGIC || buffer.getInt() != VERSION) {
+                if (!last) throw new IOException("Not a journal segment: " + file);
+                // Crashed while creating it: nothing was acknowledged from it
+                Files.delete(file);
+                return from;
+            }
+            long lsn = buffer.getLong();
+            if (lsn > from) throw new IOException("Journal records " + from + " to " + lsn + " are missing before " + file);
+
+            CRC32C checksum = new CRC32C();
+            while (buffer.remaining() >= RECORD_BYTES) {
+                int start = buffer.position();
+                checksum.reset();
+                checksum.update(buffer.slice(start, RECORD_BYTES - Integer.BYTES));
+                if (buffer.getInt(start + RECORD_BYTES - Integer.BYTES) != (int) checksum.getValue()) break;
+                byte type = buffer.get();
+                int firstId = buffer.getInt();
+                int secondId = buffer.getInt();
+                long cents = buffer.getLong();
+                buffer.getInt();
+                if (lsn++ >= from) recovery.replay(type, firstId, secondId, cents);
+            }
+            if (buffer.hasRemaining()) {
+                if (!last) throw new IOException("Damaged journal segment: " + file);
+                // Torn write of the last batch: it was never acknowledged
+                channel.truncate(buffer.position());
+                channel.force(true);
+            }
+            return Math.max(lsn, from);
+        }
+    }
+
+    private static void syncDirectory(Path dir) {
+        // Makes renames and new files durable; not every platform can open a directory
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent latency histogram with log-linear buckets: every power of two is
+ * split into 16 equal buckets, so a recorded value is off by at most 1/16
+ * (values below 32 ns are exact). Range: up to about 2^41 ns (36 minutes);
+ * larger values land in the last bucket.
+ * <p>
+ * Recording is one atomic increment on a stripe picked by the current
+ * thread's id. With many threads, virtual ones included, each stripe sees few
+ * writers, and no thread ever allocates its own histogram. Readers merge the
+ * stripes into one array of counts; there is no global lock either way.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final int stripeBits;
+    private final AtomicLongArray counts; // Stripe-major: BUCKETS counts per stripe
+
+    LatencyHistogram() {
+        // A few stripes per core; more only add memory and merge time
+        int stripes = Integer.highestOneBit(Math.max(1, 4 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        this.stripeBits = Integer.numberOfTrailingZeros(stripes);
+        this.counts = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < 2 * SUB_BUCKETS) return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that falls into a bucket. */
+    static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+    }
+
+    void record(long nanos) {
+        // Fibonacci hashing of the thread id spreads consecutive ids over the stripes
+        int stripe = stripeBits == 0 ? 0 : (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> (64 - stripeBits));
+        counts.getAndIncrement(stripe * BUCKETS + bucket(nanos));
+    }
+
+    /** Counts per bucket, summed over all stripes; a consistent view only once recording stops. */
+    long[] counts() {
+        long[] merged = new long[BUCKETS];
+        for (int i = 0; i < counts.length(); i++) merged[i % BUCKETS] += counts.get(i);
+        return merged;
+    }
+
+    static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) total += count;
+        return total;
+    }
+
+    /** Nearest-rank percentile as a bucket's upper bound in nanoseconds; 0 for no values. */
+    static long percentile(long[] counts, double fraction) {
+        long total = total(counts);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return upperBound(bucket);
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    static long[] difference(long[] now, long[] before) {
+        long[] delta = new long[now.length];
+        for (int i = 0; i < now.length; i++) delta[i] = now[i] - before[i];
+        return delta;
+    }
+}
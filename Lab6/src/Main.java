@@ -1,20 +1,36 @@
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 public class Main extends JFrame {
 
+    // --- Simulation Limits ---
+    private static final int MAX_USERS = 200_000;
+    // One OS thread per user does not scale; larger runs need virtual threads
+    private static final int MAX_PLATFORM_USERS = 1000;
+    // The log view keeps the newest lines only and repaints at a fixed rate
+    private static final int LOG_VIEW_LINES = Math.max(1, Integer.getInteger("atm.ui.logLines", 10_000));
+    private static final int LOG_VIEW_FPS = 30;
+
     // --- Core UI Components ---
-    private final JTextArea logArea;
+    private final BufferedLogView logView;
     private final JButton startSimulationBtn;
     private final JSpinner usersSpinner;
+    private final JCheckBox virtualThreadsBox;
 
     // --- ATM Core System ---
     private final ATM atm;
@@ -28,13 +44,13 @@ public class Main extends JFrame {
         setLayout(new BorderLayout());
 
         // --- Log Area ---
-        logArea = new JTextArea();
-        logArea.setEditable(false);
-        logArea.setFont(new Font("Consolas", Font.PLAIN, 13));
-        logArea.setBackground(new Color(30, 30, 30));
-        logArea.setForeground(new Color(200, 200, 200));
+        logView = new BufferedLogView(LOG_VIEW_LINES, LOG_VIEW_FPS);
+        JList<String> logList = logView.component();
+        logList.setFont(new Font("Consolas", Font.PLAIN, 13));
+        logList.setBackground(new Color(30, 30, 30));
+        logList.setForeground(new Color(200, 200, 200));
 
-        JScrollPane scrollPane = new JScrollPane(logArea);
+        JScrollPane scrollPane = new JScrollPane(logList);
         scrollPane.setBorder(BorderFactory.createTitledBorder(" ATM Operations Log "));
         add(scrollPane, BorderLayout.CENTER);
 
@@ -43,9 +59,12 @@ public class Main extends JFrame {
         controlPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
 
         controlPanel.add(new JLabel("Concurrent users count:"));
-        usersSpinner = new JSpinner(new SpinnerNumberModel(5, 1, 50, 1));
+        usersSpinner = new JSpinner(new SpinnerNumberModel(5, 1, MAX_USERS, 1));
         controlPanel.add(usersSpinner);
 
+        virtualThreadsBox = new JCheckBox("Virtual threads", true);
+        controlPanel.add(virtualThreadsBox);
+
         startSimulationBtn = new JButton("Start Simulation");
         styleButton(startSimulationBtn, new Color(0, 123, 255));
         startSimulationBtn.addActionListener(_ -> startSimulation());
@@ -54,32 +73,49 @@ public class Main extends JFrame {
         add(controlPanel, BorderLayout.SOUTH);
 
         // Initialize ATM System
-        atm = new ATM(logArea);
+        atm = new ATM(logView);
     }
 
     private void startSimulation() {
+        int numUsers = (Integer) usersSpinner.getValue();
+        boolean virtual = virtualThreadsBox.isSelected();
+        if (!virtual && numUsers > MAX_PLATFORM_USERS) {
+            JOptionPane.showMessageDialog(this,
+                    "Platform threads are limited to " + MAX_PLATFORM_USERS + " users. Use virtual threads for more.",
+                    "Too many users", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
         startSimulationBtn.setEnabled(false);
-        logArea.setText("");
+        logView.clear();
         atm.log("=== SIMULATION STARTED ===");
 
-        int numUsers = (Integer) usersSpinner.getValue();
+        // Users are started and awaited off the EDT
+        Thread.ofPlatform().name("Simulation").daemon().start(() -> {
+            runSimulation(atm, numUsers, virtual);
+            SwingUtilities.invokeLater(() -> startSimulationBtn.setEnabled(true));
+        });
+    }
 
-        // Create and start user threads
-        for (int i = 1; i <= numUsers; i++) {
-            Thread userThread = new Thread(new UserAction(atm, i), "User-" + i);
-            userThread.start();
+    /**
+     * Runs one user per thread, virtual or platform, and returns once every user is done.
+     * The executor's close() waits for all of its tasks, so the end of the simulation is
+     * the moment the last user finishes rather than a guess.
+     */
+    static void runSimulation(ATM atm, int numUsers, boolean virtual) {
+        Thread.Builder threads = virtual ? Thread.ofVirtual() : Thread.ofPlatform();
+        long operationsBefore = atm.operationCount();
+        long start = System.nanoTime();
+        try (ExecutorService users = Executors.newThreadPerTaskExecutor(threads.name("User-", 1).factory())) {
+            for (int i = 1; i <= numUsers; i++) {
+                users.execute(new UserAction(atm, i, numUsers));
+            }
         }
-
-        // A separate thread to re-enable the button after the simulation roughly ends
-        new Thread(() -> {
-            try {
-                Thread.sleep(6000); // Simulation takes around 5 seconds
-                SwingUtilities.invokeLater(() -> {
-                    atm.log("=== SIMULATION FINISHED ===");
-                    startSimulationBtn.setEnabled(true);
-                });
-            } catch (InterruptedException ignored) {}
-        }).start();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long operations = atm.operationCount() - operationsBefore;
+        atm.log(String.format("=== SIMULATION FINISHED === %d users on %s threads in %.2f s, %d operations (%.0f ops/s)",
+                numUsers, virtual ? "virtual" : "platform", seconds, operations, operations / seconds));
+        atm.logMetrics("[metrics total] ", atm.metrics().totalReport());
     }
 
     private void styleButton(JButton btn, Color bgColor) {
@@ -96,37 +132,6 @@ public class Main extends JFrame {
     // ATM SYSTEM (MULTITHREADING LOGIC)
     // ==========================================
 
-    /**
-     * Thread-safe Account class.
-     * All methods that modify the balance are marked as 'synchronized'
-     * to prevent Race Conditions when multiple threads access the same account.
-     */
-    static class Account {
-        private double balance;
-
-        public Account(double initialBalance) {
-            this.balance = initialBalance;
-        }
-
-        public synchronized void deposit(double amount) {
-            balance += amount;
-        }
-
-        public synchronized boolean withdraw(double amount) {
-            if (balance >= amount) {
-                // Artificial delay
-                try { Thread.sleep(10); } catch (InterruptedException ignored) {}
-                balance -= amount;
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized double getBalance() {
-            return balance;
-        }
-    }
-
     /**
      * Main ATM Class handling operations.
      */
@@ -134,79 +139,224 @@ public class Main extends JFrame {
         // Constants
         private static final double MAX_WITHDRAWAL_LIMIT = 5000.0;
         private static final String LOG_FILE_PATH = "atm_log.txt";
-
-        // ConcurrentHashMap for thread-safe addition/removal of accounts
-        private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
-        private final JTextArea logArea;
+        // Ring size (power of two), longest wait before a batch is written (0 = as soon as
+        // the ring is empty) and fsync policy (-1 = never, 0 = every batch, N = every N ms)
+        private static final int LOG_CAPACITY = Integer.getInteger("atm.log.capacity", 1 << 16);
+        private static final long LOG_FLUSH_MS = Long.getLong("atm.log.flushMs", 0);
+        private static final long LOG_FSYNC_MS = Long.getLong("atm.log.fsyncMs", -1);
+        // Durable balances: journal and snapshots, unless atm.journal=false keeps them in memory only
+        private static final String JOURNAL_DIR = "atm_journal";
+        private static final boolean JOURNAL = Boolean.parseBoolean(System.getProperty("atm.journal", "true"));
+        private static final boolean JOURNAL_FSYNC = Boolean.parseBoolean(System.getProperty("atm.journal.fsync", "true"));
+        private static final long JOURNAL_SEGMENT_BYTES = Long.getLong("atm.journal.segmentBytes", 64 << 20);
+        private static final long SNAPSHOT_SECONDS = Long.getLong("atm.journal.snapshotSeconds", 30);
+        // Latency percentiles and counters go to the log this often (0 = never); always readable over JMX
+        private static final long METRICS_DUMP_SECONDS = Long.getLong("atm.metrics.dumpSeconds", 5);
+        private static final String METRICS_MBEAN_NAME = "lab6:type=AtmMetrics";
+
+        // Accounts and deadlock-free transfers between them
+        private final Bank bank;
+        private final BufferedLogView logView;
         private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+        private final RingLogWriter logWriter;
+        private final LongAdder operations = new LongAdder();
+        private final AtmMetrics metrics;
+
+        public ATM(BufferedLogView logView) {
+            this.logView = logView;
+            RingLogWriter writer = null;
+            try {
+                writer = new RingLogWriter(Path.of(LOG_FILE_PATH), LOG_CAPACITY, LOG_FLUSH_MS, LOG_FSYNC_MS);
+                // Lines still in the ring are written out when the application exits
+                Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "log-writer-shutdown"));
+            } catch (IOException e) {
+                System.err.println("Failed to open log file.");
+            }
+            this.logWriter = writer;
+
+            this.bank = openBank();
+            if (bank.accountCount() > 0) log(String.format("Recovered %d open accounts from the journal.", bank.accountCount()));
+
+            this.metrics = new AtmMetrics(bank::lockContentions);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(METRICS_MBEAN_NAME));
+            } catch (JMException e) {
+                System.err.println("Failed to register metrics MBean: " + e.getMessage());
+            }
+            if (METRICS_DUMP_SECONDS > 0) {
+                ScheduledExecutorService dump = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "metrics-dump");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                // Quiet intervals produce no lines
+                dump.scheduleAtFixedRate(() -> logMetrics("[metrics] ", metrics.intervalReport()),
+                        METRICS_DUMP_SECONDS, METRICS_DUMP_SECONDS, TimeUnit.SECONDS);
+            }
+        }
 
-        public ATM(JTextArea logArea) {
-            this.logArea = logArea;
+        private static Bank openBank() {
+            if (!JOURNAL) return new Bank();
+            try {
+                Bank bank = Bank.recover(Path.of(JOURNAL_DIR), JOURNAL_FSYNC, JOURNAL_SEGMENT_BYTES, SNAPSHOT_SECONDS);
+                // A final snapshot makes the next start quick
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        bank.close();
+                    } catch (IOException e) {
+                        System.err.println("Failed to close journal.");
+                    }
+                }, "bank-shutdown"));
+                return bank;
+            } catch (IOException e) {
+                System.err.println("Failed to open journal, balances are kept in memory only: " + e.getMessage());
+                return new Bank();
+            }
         }
 
         /**
          * Universal logging method (GUI and File).
-         * Marked as 'synchronized' to prevent file writing conflicts between threads.
+         * Not synchronized: the line is handed to the log writer's lock-free ring and
+         * written to the file by its own thread, so callers never wait for the disk.
          */
-        public synchronized void log(String message) {
+        public void log(String message) {
             String time = LocalDateTime.now().format(timeFormatter);
             String threadName = Thread.currentThread().getName();
             String fullMessage = String.format("[%s] [%s] %s", time, threadName, message);
 
-            // Safely update Swing GUI from a background thread
-            SwingUtilities.invokeLater(() -> {
-                logArea.append(fullMessage + "\n");
-                logArea.setCaretPosition(logArea.getDocument().getLength()); // Auto-scroll
-            });
+            // The view picks the line up with its next frame; no EDT task per line
+            logView.append(fullMessage);
 
-            // Write to log file
-            try (FileWriter fw = new FileWriter(LOG_FILE_PATH, true);
-                 PrintWriter pw = new PrintWriter(fw)) {
-                pw.println(fullMessage);
-            } catch (IOException e) {
-                System.err.println("Failed to write to log file.");
+            // Queue for the log file
+            if (logWriter != null) logWriter.append(fullMessage);
+        }
+
+        public AtmMetrics metrics() {
+            return metrics;
+        }
+
+        void logMetrics(String prefix, List<String> lines) {
+            for (String line : lines) log(prefix + line);
+        }
+
+        /** Account operations attempted so far, successful or not. */
+        public long operationCount() {
+            return operations.sum();
+        }
+
+        /**
+         * The amount in whole cents; zero, negative and sub-cent amounts are
+         * denied here and logged, rather than thrown at the user thread by the bank.
+         */
+        private long cents(double amount) {
+            long cents = Account.toCents(amount);
+            if (cents <= 0) {
+                metrics.denied();
+                log(String.format("DENIED: Invalid amount %.4f", amount));
             }
+            return cents;
         }
 
         public void openAccount(int accId, double initialDeposit) {
-            accounts.putIfAbsent(accId, new Account(initialDeposit));
-            log(String.format("Opened account #%d. Initial balance: %.2f", accId, initialDeposit));
+            operations.increment();
+            long start = System.nanoTime();
+            boolean opened = bank.open(accId, Account.toCents(initialDeposit));
+            metrics.record(AtmMetrics.Operation.OPEN, System.nanoTime() - start);
+            if (opened) {
+                log(String.format("Opened account #%d. Initial balance: %.2f", accId, initialDeposit));
+            } else {
+                log(String.format("Error: Account #%d already exists.", accId));
+            }
         }
 
         public void closeAccount(int accId) {
-            if (accounts.remove(accId) != null) {
+            operations.increment();
+            long start = System.nanoTime();
+            Account closed = bank.close(accId);
+            metrics.record(AtmMetrics.Operation.CLOSE, System.nanoTime() - start);
+            if (closed != null) {
                 log(String.format("Account #%d closed.", accId));
             } else {
+                metrics.missingAccount();
                 log(String.format("Error: Account #%d not found for closing.", accId));
             }
         }
 
         public void deposit(int accId, double amount) {
-            Account acc = accounts.get(accId);
-            if (acc != null) {
-                acc.deposit(amount);
-                log(String.format("Account #%d deposited by %.2f. New balance: %.2f", accId, amount, acc.getBalance()));
+            operations.increment();
+            long cents = cents(amount);
+            if (cents <= 0) return;
+            long start = System.nanoTime();
+            long balance;
+            try {
+                balance = bank.deposit(accId, cents);
+            } catch (ArithmeticException e) {
+                metrics.denied();
+                log(String.format("DENIED: Deposit of %.2f would overflow account #%d", amount, accId));
+                return;
+            }
+            metrics.record(AtmMetrics.Operation.DEPOSIT, System.nanoTime() - start);
+            if (balance != Bank.NO_SUCH_ACCOUNT) {
+                log(String.format("Account #%d deposited by %.2f. New balance: %.2f", accId, amount, Account.toAmount(balance)));
             } else {
+                metrics.missingAccount();
                 log(String.format("Error: Account #%d does not exist.", accId));
             }
         }
 
         public void withdraw(int accId, double amount) {
+            operations.increment();
             // Check single withdrawal limit
             if (amount > MAX_WITHDRAWAL_LIMIT) {
+                metrics.denied();
                 log(String.format("DENIED: Withdrawal limit exceeded (%.2f > %.2f)", amount, MAX_WITHDRAWAL_LIMIT));
                 return;
             }
 
-            Account acc = accounts.get(accId);
-            if (acc != null) {
-                if (acc.withdraw(amount)) {
-                    log(String.format("Withdrawal of %.2f from account #%d SUCCESSFUL. Remaining balance: %.2f", amount, accId, acc.getBalance()));
-                } else {
-                    log(String.format("DENIED: Insufficient funds on account #%d for withdrawal of %.2f", accId, amount));
-                }
-            } else {
+            // Artificial delay (processing time); no lock is held, other users of the account are not blocked
+            try { Thread.sleep(10); } catch (InterruptedException ignored) {}
+            long cents = cents(amount);
+            if (cents <= 0) return;
+            long start = System.nanoTime();
+            long balance = bank.withdraw(accId, cents);
+            metrics.record(AtmMetrics.Operation.WITHDRAW, System.nanoTime() - start);
+            if (balance == Bank.NO_SUCH_ACCOUNT) {
+                metrics.missingAccount();
                 log(String.format("Error: Account #%d does not exist.", accId));
+            } else if (balance != Account.INSUFFICIENT_FUNDS) {
+                log(String.format("Withdrawal of %.2f from account #%d SUCCESSFUL. Remaining balance: %.2f", amount, accId, Account.toAmount(balance)));
+            } else {
+                metrics.denied();
+                log(String.format("DENIED: Insufficient funds on account #%d for withdrawal of %.2f", accId, amount));
+            }
+        }
+
+        public void transfer(int fromId, int toId, double amount) {
+            operations.increment();
+            long cents = cents(amount);
+            if (cents <= 0) return;
+            long start = System.nanoTime();
+            Bank.Transfer transfer = bank.transfer(fromId, toId, cents);
+            metrics.record(AtmMetrics.Operation.TRANSFER, System.nanoTime() - start);
+            switch (transfer.status()) {
+                case DONE -> log(String.format("Transfer of %.2f from account #%d to account #%d SUCCESSFUL. Balances: %.2f / %.2f",
+                        amount, fromId, toId, Account.toAmount(transfer.fromBalance()), Account.toAmount(transfer.toBalance())));
+                case INSUFFICIENT_FUNDS -> {
+                    metrics.denied();
+                    log(String.format("DENIED: Insufficient funds on account #%d for transfer of %.2f", fromId, amount));
+                }
+                case SAME_ACCOUNT -> {
+                    metrics.denied();
+                    log(String.format("DENIED: Transfer from account #%d to itself", fromId));
+                }
+                case OVERFLOW -> {
+                    metrics.denied();
+                    log(String.format("DENIED: Transfer of %.2f would overflow account #%d", amount, toId));
+                }
+                case NO_SUCH_ACCOUNT -> {
+                    metrics.missingAccount();
+                    log(String.format("Error: Account #%d or #%d does not exist.", fromId, toId));
+                }
             }
         }
     }
@@ -221,10 +371,12 @@ public class Main extends JFrame {
     static class UserAction implements Runnable {
         private final ATM atm;
         private final int userId;
+        private final int userCount;
 
-        public UserAction(ATM atm, int userId) {
+        public UserAction(ATM atm, int userId, int userCount) {
             this.atm = atm;
             this.userId = userId;
+            this.userCount = userCount;
         }
 
         @Override
@@ -234,25 +386,29 @@ public class Main extends JFrame {
 
                 // 1. User opens an account
                 atm.openAccount(accId, 1000.0);
-                Thread.sleep((long) (Math.random() * 500));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(500));
 
                 // 2. User deposits money
                 atm.deposit(accId, 1500.0);
-                Thread.sleep((long) (Math.random() * 1000));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(1000));
 
                 // 3. User attempts a valid withdrawal
                 atm.withdraw(accId, 2000.0);
-                Thread.sleep((long) (Math.random() * 1000));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(1000));
+
+                // 4. User transfers money to the next user's account (it may not be open yet or already closed)
+                atm.transfer(accId, 1000 + userId % userCount + 1, 200.0);
+                Thread.sleep(ThreadLocalRandom.current().nextLong(500));
 
-                // 4. User attempts to withdraw above the ATM limit
+                // 5. User attempts to withdraw above the ATM limit
                 atm.withdraw(accId, 6000.0);
-                Thread.sleep((long) (Math.random() * 500));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(500));
 
-                // 5. User attempts to withdraw more than their balance
+                // 6. User attempts to withdraw more than their balance
                 atm.withdraw(accId, 2000.0);
-                Thread.sleep((long) (Math.random() * 500));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(500));
 
-                // 6. User closes the account
+                // 7. User closes the account
                 atm.closeAccount(accId);
 
             } catch (InterruptedException e) {
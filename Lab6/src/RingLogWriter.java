@@ -0,0 +1,207 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log file writer that keeps disk I/O off the calling threads.
+ * <p>
+ * Producers claim a slot in a bounded ring with one CAS and publish the line
+ * through the slot's sequence number (a multi-producer queue in the style of
+ * Vyukov's bounded queue, without locks). A single writer thread drains the
+ * ring, encodes lines into one reused direct buffer and writes whole batches
+ * to a FileChannel.
+ * <p>
+ * Flush policy: a batch is written once the ring is empty, or after at most
+ * {@code flushIntervalMs} when that is positive, so that quiet periods write
+ * fewer, larger batches. Fsync policy: never ({@code -1}), after every write
+ * ({@code 0}), or at most every {@code fsyncIntervalMs}. When the ring is full
+ * producers wait for the writer instead of losing lines.
+ */
+final class RingLogWriter implements Closeable {
+    private static final int BUFFER_BYTES = 64 << 10;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicReferenceArray<String> lines;
+    // sequences[i] == position: slot free for that position; == position + 1: line published
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // Writer thread only
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final long flushIntervalNanos;
+    private final long fsyncIntervalNanos;
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+
+    RingLogWriter(Path path, int capacity, long flushIntervalMs, long fsyncIntervalMs) throws IOException {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        this.lines = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) sequences.set(i, i);
+        this.mask = capacity - 1;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.fsyncIntervalNanos = fsyncIntervalMs < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.writer = new Thread(this::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues a line; never touches the disk. Lines logged after {@link #close()} are dropped. */
+    void append(String line) {
+        while (!closed) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (!tail.compareAndSet(position, position + 1)) continue;
+                lines.set(slot, line);
+                sequences.set(slot, position + 1);
+                if (writerParked) wakeWriter();
+                return;
+            }
+            if (sequence < position) {
+                // Full: the writer has not freed this slot yet
+                wakeWriter();
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+        }
+    }
+
+    private void wakeWriter() {
+        writerParked = false;
+        LockSupport.unpark(writer);
+    }
+
+    // ==========================================
+    // WRITER THREAD
+    // ==========================================
+
+    private void drainLoop() {
+        long lastFsync = System.nanoTime();
+        long batchStart = 0;
+        while (true) {
+            boolean wasClosed = closed;
+            int drained = drain();
+            if (drained > 0 && batchStart == 0) batchStart = System.nanoTime();
+
+            boolean pending = buffer.position() > 0;
+            boolean ringEmpty = drained == 0 || !hasPublished();
+            boolean due = ringEmpty && (flushIntervalNanos == 0 || wasClosed
+                    || System.nanoTime() - batchStart >= flushIntervalNanos);
+            if (pending && due) {
+                writeBuffer();
+                batchStart = 0;
+                if (fsyncIntervalNanos == 0 || (fsyncIntervalNanos > 0 && System.nanoTime() - lastFsync >= fsyncIntervalNanos)) {
+                    force();
+                    lastFsync = System.nanoTime();
+                }
+            }
+            if (wasClosed && !hasPublished()) break;
+
+            if (drained == 0) {
+                writerParked = true;
+                // Re-check after announcing, so a line published meanwhile is not left waiting
+                if (!hasPublished() && !closed) {
+                    long wait = buffer.position() > 0 ? flushIntervalNanos : TimeUnit.MILLISECONDS.toNanos(100);
+                    LockSupport.parkNanos(this, Math.max(1, wait));
+                }
+                writerParked = false;
+            }
+        }
+        if (fsyncIntervalNanos >= 0) force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close log file.");
+        }
+    }
+
+    private boolean hasPublished() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    /** Moves every published line into the buffer, writing it out whenever it fills up. */
+    private int drain() {
+        int count = 0;
+        while (hasPublished()) {
+            int slot = (int) head & mask;
+            String line = lines.get(slot);
+            lines.set(slot, null);
+            // Hand the slot back for the position one lap ahead
+            sequences.set(slot, head + mask + 1);
+            head++;
+            encode(line);
+            count++;
+        }
+        return count;
+    }
+
+    private void encode(String line) {
+        CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                writeBuffer();
+                continue;
+            }
+            if (result.isError()) {
+                // Unpaired surrogates: skip the bad characters
+                chars.position(chars.position() + result.length());
+                continue;
+            }
+            break;
+        }
+        encoder.flush(buffer);
+        if (buffer.remaining() < LINE_SEPARATOR.length) writeBuffer();
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            System.err.println("Failed to write to log file.");
+        }
+        buffer.clear();
+    }
+
+    private void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            System.err.println("Failed to sync log file.");
+        }
+    }
+
+    /** Writes every queued line, syncs according to the policy and closes the file. */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
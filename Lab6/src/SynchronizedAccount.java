@@ -0,0 +1,31 @@
+/**
+ * Account guarded by its monitor: every method that touches the balance is
+ * 'synchronized', so concurrent users of one account take turns.
+ */
+final class SynchronizedAccount implements Account {
+    private long balance;
+
+    SynchronizedAccount(long initialCents) {
+        this.balance = initialCents;
+    }
+
+    @Override
+    public synchronized long deposit(long cents) {
+        Account.requirePositive(cents);
+        balance = Math.addExact(balance, cents);
+        return balance;
+    }
+
+    @Override
+    public synchronized long withdraw(long cents) {
+        Account.requirePositive(cents);
+        if (balance < cents) return INSUFFICIENT_FUNDS;
+        balance -= cents;
+        return balance;
+    }
+
+    @Override
+    public synchronized long balance() {
+        return balance;
+    }
+}
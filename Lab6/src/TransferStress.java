@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Headless stress test of {@link Bank#transfer}: random transfers between random
+ * accounts from a growing number of threads, while an auditor keeps checking that
+ * no money is created or lost.
+ * <p>
+ * For every thread count a fresh bank is filled with {@code --accounts} accounts;
+ * the threads share {@code --transfers} transfers of random amounts. Meanwhile the
+ * auditor compares {@link Bank#totalBalance()} with the starting total. At the end
+ * the total is checked once more and no balance may be negative. A run that does
+ * not finish within {@code --timeout-s} is reported together with any deadlocked
+ * threads. Few accounts mean heavy contention on the same locks.
+ * <p>
+ * With {@code --journal} every run uses a durable bank in a fresh directory
+ * below it: each transfer waits for its group commit, so throughput depends on
+ * how many transfers are in flight at once ({@code --virtual} makes large
+ * thread counts cheap). After the run the directory is copied as if the process
+ * had crashed, with half a record torn off the end of the journal; the copy must
+ * recover by replaying the journal. Then the bank is closed, which writes a final
+ * snapshot, and the directory must recover from that too. Both are compared
+ * with the bank balance by balance.
+ * <p>
+ * Usage:
+ * <pre>
+ * java TransferStress [--accounts 1000] [--transfers 4000000] [--threads 1,2,4,8,16] [--timeout-s 120] [--seed 42]
+ *                     [--journal DIR] [--no-fsync] [--virtual]
+ * </pre>
+ */
+public class TransferStress {
+
+    private static final long INITIAL_CENTS = 1000_00;
+    private static final int MAX_TRANSFER_CENTS = 500_00;
+    private static final long SEGMENT_BYTES = 64 << 20;
+    private static final long SNAPSHOT_SECONDS = 5;
+
+    private record Config(int accounts, int transfers, long timeoutSeconds, Path journal, boolean fsync, boolean virtual) {
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int accounts = 1000;
+        int transfers = 4_000_000;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        long timeoutSeconds = 120;
+        long seed = 42;
+        Path journal = null;
+        boolean fsync = true;
+        boolean virtual = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--accounts" -> accounts = Integer.parseInt(args[++i]);
+                case "--transfers" -> transfers = Integer.parseInt(args[++i]);
+                case "--threads" -> threadCounts = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--timeout-s" -> timeoutSeconds = Long.parseLong(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--journal" -> journal = Path.of(args[++i]);
+                case "--no-fsync" -> fsync = false;
+                case "--virtual" -> virtual = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Config config = new Config(accounts, transfers, timeoutSeconds, journal, fsync, virtual);
+        System.out.printf("%8s %10s %12s %10s %14s %8s %10s %10s%n",
+                "threads", "accounts", "transfers", "refused", "transfers/s", "audits", "invariant", "recovered");
+        boolean ok = true;
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int threads : threadCounts) {
+            ok &= run(threads, config, root.split());
+            if (!ok) break;
+        }
+        System.out.println(ok ? "Total balance preserved" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean run(int threads, Config config, SplittableRandom random) throws InterruptedException, IOException {
+        int accounts = config.accounts();
+        int transfers = config.transfers();
+        long timeoutSeconds = config.timeoutSeconds();
+        Path dir = null;
+        Bank bank;
+        if (config.journal() == null) {
+            bank = new Bank();
+        } else {
+            Files.createDirectories(config.journal());
+            dir = Files.createTempDirectory(config.journal(), "run-");
+            bank = Bank.recover(dir, config.fsync(), SEGMENT_BYTES, SNAPSHOT_SECONDS);
+        }
+        for (int id = 0; id < accounts; id++) bank.open(id, INITIAL_CENTS);
+        long expected = bank.totalBalance();
+
+        LongAdder refused = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int share = transfers / threads + (t < transfers % threads ? 1 : 0);
+            SplittableRandom own = random.split();
+            Thread.Builder builder = config.virtual() ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+            workers[t] = builder.name("transfer-" + t).start(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < share; i++) {
+                    int from = own.nextInt(accounts);
+                    int to = own.nextInt(accounts);
+                    Bank.Transfer result = bank.transfer(from, to, 1 + own.nextInt(MAX_TRANSFER_CENTS));
+                    if (result.status() != Bank.Status.DONE) refused.increment();
+                }
+            });
+        }
+
+        // Audits run back to back against the transfers until the workers are done
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] audits = new long[2]; // {audits, violations}
+        Thread auditor = Thread.ofPlatform().name("auditor").daemon().start(() -> {
+            while (running.get()) {
+                if (bank.totalBalance() != expected) audits[1]++;
+                audits[0]++;
+                Thread.yield();
+            }
+        });
+
+        long begin = System.nanoTime();
+        start.countDown();
+        long deadline = begin + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (worker.isAlive()) {
+                long[] deadlocked = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+                System.out.printf("%8d  did not finish in %d s; deadlocked threads: %d%n",
+                        threads, timeoutSeconds, deadlocked == null ? 0 : deadlocked.length);
+                return false;
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        running.set(false);
+        auditor.join();
+
+        boolean consistent = audits[1] == 0 && bank.totalBalance() == expected;
+        for (int id = 0; id < accounts; id++) consistent &= bank.balance(id) >= 0;
+        String recovered = dir == null ? "-" : recoverAndCompare(bank, dir, config) ? "OK" : "MISMATCH";
+        System.out.printf(Locale.ROOT, "%8d %10d %12d %10d %14.3e %8d %10s %10s%n", threads, accounts, transfers,
+                refused.sum(), transfers / seconds, audits[0], consistent ? "OK" : audits[1] + " BROKEN", recovered);
+        return consistent && !recovered.equals("MISMATCH");
+    }
+
+    /**
+     * Recovers a crash copy of the directory (journal replay and torn tail), then closes the
+     * durable bank and recovers the directory itself (final snapshot); compares every balance
+     * of both with the bank, then removes both directories.
+     */
+    private static boolean recoverAndCompare(Bank bank, Path dir, Config config) throws IOException {
+        Path crashed = crashCopy(dir);
+        bank.close();
+        boolean same = matches(bank, crashed, config) && matches(bank, dir, config);
+        delete(crashed);
+        delete(dir);
+        return same;
+    }
+
+    private static boolean matches(Bank bank, Path dir, Config config) throws IOException {
+        try (Bank recovered = Bank.recover(dir, config.fsync(), SEGMENT_BYTES, SNAPSHOT_SECONDS)) {
+            boolean same = recovered.accountCount() == bank.accountCount();
+            for (int id = 0; id < config.accounts(); id++) same &= recovered.balance(id) == bank.balance(id);
+            return same;
+        }
+    }
+
+    /**
+     * Copies the journal directory of a running bank as a crash would leave it: every
+     * acknowledged record, plus half of a record that was being written at the end.
+     */
+    private static Path crashCopy(Path dir) throws IOException {
+        Path copy = Files.createTempDirectory(dir.getParent(), dir.getFileName() + "-crash-");
+        // Segments before the snapshot: one deleted meanwhile is covered by the newer snapshot copied after
+        Path last = null;
+        for (Path segment : files(dir, ".wal")) {
+            try {
+                last = Files.copy(segment, copy.resolve(segment.getFileName()));
+            } catch (NoSuchFileException ignored) {
+            }
+        }
+        for (Path snapshot : files(dir, ".bin")) Files.copy(snapshot, copy.resolve(snapshot.getFileName()));
+        if (last != null) Files.write(last, new byte[Journal.RECORD_BYTES / 2], StandardOpenOption.APPEND);
+        return copy;
+    }
+
+    private static List<Path> files(Path dir, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}